@@ -0,0 +1,78 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.types.ObjectId;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.htwg_konstanz.mobilelearning.repositories.ParticipantRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/*
+ * Hands out aliases of the AliasGenerator without collisions (per quiz form).
+ * Every form walks through its own seeded permutation of the alias space with a cursor stored
+ * by the ParticipantRepository, so the next alias is computed in O(1) and never repeats (also not
+ * after a restart). When the space is used up, the aliases start again with a number ("Clever Fox 2").
+ */
+@ApplicationScoped
+public class AliasAllocator {
+
+    // index i -> (step * i + offset) mod size, a permutation because step and size are coprime
+    private static class Permutation {
+        final long size;
+        final long step;
+        final long offset;
+
+        Permutation(long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            this.size = AliasGenerator.size();
+            long step = 1 + random.nextLong(this.size - 1);
+            while (gcd(step, this.size) != 1) {
+                step++;
+            }
+            this.step = step;
+            this.offset = random.nextLong(this.size);
+        }
+
+        String at(long index) {
+            String alias = AliasGenerator.aliasAt((int) ((step * (index % size) + offset) % size));
+            long round = index / size;
+            return round == 0 ? alias : alias + " " + (round + 1);
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+
+    @Inject
+    ParticipantRepository participantRepository;
+
+    // aliases that are not bound to a form (e.g. /funnyalias without form), only unique until a restart
+    private final Permutation unbound = new Permutation(System.nanoTime());
+    private final AtomicLong unboundCursor = new AtomicLong();
+
+    private final Cache<ObjectId, Permutation> forms = Caffeine.newBuilder()
+        .expireAfterAccess(Duration.ofDays(1))
+        .maximumSize(10000)
+        .build();
+
+    public String next(ObjectId formId) {
+        if (formId == null) {
+            return unbound.at(unboundCursor.getAndIncrement());
+        }
+        // the seed depends on the form only (the same permutation on every instance), the cursor is shared
+        // (the unique alias index of the participants still reports aliases chosen by hand)
+        return this.at(formId, participantRepository.nextAliasIndex(formId));
+    }
+
+    // alias of the form at the index of its permutation (the cursor has to be moved behind it, see ParticipantRepository.reserveAliasIndexes)
+    public String at(ObjectId formId, long index) {
+        return forms.get(formId, id -> new Permutation(id.hashCode())).at(index);
+    }
+}
@@ -1,5 +1,7 @@
 package de.htwg_konstanz.mobilelearning.helper;
 
+import java.util.Arrays;
+
 // static class to generate random aliases
 // like curios zebra, intelligent tiger, strange squirrel, ... (positive adjectives)
 
@@ -63,14 +65,25 @@ public class AliasGenerator {
             "viper", "vulture", "wallaby", "walrus", "wasp", "weasel", "whale", "wildcat", "wolf", "wolverine",
             "wombat", "woodcock", "woodpecker", "worm", "wren", "yak", "zebra", };
 
+    // without duplicate words, so every index of the alias space is a different alias
+    private static final String[] uniqueAdjectives = Arrays.stream(adjectives).distinct().toArray(String[]::new);
+    private static final String[] uniqueAnimals = Arrays.stream(animals).distinct().toArray(String[]::new);
+
     public static String generateAlias() {
-        int adjectiveIndex = (int) (Math.random() * adjectives.length);
-        int animalIndex = (int) (Math.random() * animals.length);
+        return aliasAt((int) (Math.random() * size()));
+    }
+
+    // number of different aliases (adjective x animal)
+    public static int size() {
+        return uniqueAdjectives.length * uniqueAnimals.length;
+    }
 
+    // the alias with the given index in the alias space (0 <= index < size())
+    public static String aliasAt(int index) {
         // convert the first letter to uppercase
-        String adjective = adjectives[adjectiveIndex];
+        String adjective = uniqueAdjectives[index / uniqueAnimals.length];
         adjective = adjective.substring(0, 1).toUpperCase() + adjective.substring(1);
-        String animal = animals[animalIndex];
+        String animal = uniqueAnimals[index % uniqueAnimals.length];
         animal = animal.substring(0, 1).toUpperCase() + animal.substring(1);
         return adjective + " " + animal;
     }
@@ -0,0 +1,37 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/*
+ * Conditional GET with strong ETags: clients send the ETag of their copy in If-None-Match
+ * and get a 304 without body if it is still up to date.
+ * Responses are private (user specific) and have to be revalidated on every use.
+ */
+public class ConditionalResponse {
+
+    private static final CacheControl CACHE_CONTROL = cacheControl();
+
+    // 304 response if the client already has the current version, null otherwise
+    public static Response notModified(Request request, String etag) {
+        EntityTag entityTag = new EntityTag(etag);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified == null) {
+            return null;
+        }
+        return notModified.tag(entityTag).cacheControl(CACHE_CONTROL).build();
+    }
+
+    public static Response ok(Object entity, String etag) {
+        return Response.ok(entity).tag(new EntityTag(etag)).cacheControl(CACHE_CONTROL).build();
+    }
+
+    private static CacheControl cacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        return cacheControl;
+    }
+}
@@ -0,0 +1,28 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/*
+ * Stable hash of the content of an object (e.g. the api models of a synced course),
+ * stored next to the synced entity to detect if the next sync changes anything.
+ */
+public class ContentHash {
+
+    // properties and map entries are sorted, so the hash does not depend on the declaration order
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+        .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .build();
+
+    public static String of(Object content) {
+        try {
+            return Hasher.hash(MAPPER.writeValueAsString(content));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Content can not be hashed.", e);
+        }
+    }
+}
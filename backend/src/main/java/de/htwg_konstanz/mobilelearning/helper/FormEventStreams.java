@@ -0,0 +1,172 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.types.ObjectId;
+
+import io.quarkus.scheduler.Scheduled;
+import io.quarkus.scheduler.Scheduled.ConcurrentExecution;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.subscription.MultiEmitter;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+
+/*
+ * Owner events of the live forms for read-only viewers (server-sent events).
+ * Every event is rendered once by the socket and shared by all viewers of the form,
+ * the last events are buffered so that viewers can resume after a reconnect (Last-Event-ID).
+ */
+@ApplicationScoped
+public class FormEventStreams {
+
+    private static final int BUFFER_SIZE = 32;
+
+    // comment sent to idle connections, so that proxies do not close them
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(25);
+
+    // buffers of forms without viewers are dropped after this time
+    private static final long RETAIN_MILLIS = 10 * 60 * 1000;
+
+    // name of the event with the current view for new viewers
+    public static final String FORM_VIEW = "FORM_VIEW";
+
+    public static class FormEvent {
+        public final long id;
+        public final String name;
+        public final String data;
+
+        FormEvent(long id, String name, String data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static class Stream {
+        final ArrayDeque<FormEvent> buffer = new ArrayDeque<FormEvent>();
+        final Set<MultiEmitter<? super FormEvent>> viewers = new HashSet<MultiEmitter<? super FormEvent>>();
+
+        // ids keep increasing across restarts (start time in ms * 1000), so old ids never skip new events
+        long nextId = System.currentTimeMillis() * 1000;
+        long idleSince = System.currentTimeMillis();
+        boolean closed = false;
+    }
+
+    private final Map<ObjectId, Stream> streams = new ConcurrentHashMap<ObjectId, Stream>();
+
+    // publishes a rendered owner event of the form (only buffered if the form has or recently had viewers)
+    public void publish(ObjectId formId, String name, String data) {
+        Stream stream = streams.get(formId);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (stream.viewers.isEmpty() && System.currentTimeMillis() - stream.idleSince > RETAIN_MILLIS) {
+                stream.closed = true;
+                streams.remove(formId, stream);
+                return;
+            }
+            FormEvent event = new FormEvent(stream.nextId++, name, data);
+            stream.buffer.addLast(event);
+            if (stream.buffer.size() > BUFFER_SIZE) {
+                stream.buffer.removeFirst();
+            }
+            stream.viewers.forEach(viewer -> viewer.emit(event));
+        }
+    }
+
+    // drops the buffers of forms that had no viewers for some time (publish only sees forms that still get events)
+    @Scheduled(every = "1m", delayed = "1m", concurrentExecution = ConcurrentExecution.SKIP)
+    void removeIdle() {
+        streams.forEach((formId, stream) -> {
+            synchronized (stream) {
+                if (stream.viewers.isEmpty() && System.currentTimeMillis() - stream.idleSince > RETAIN_MILLIS) {
+                    stream.closed = true;
+                    streams.remove(formId, stream);
+                }
+            }
+        });
+    }
+
+    /*
+     * Events of the form: first the buffered events after lastEventId (or only the latest event,
+     * which contains the current form, if lastEventId is null), then the new events.
+     * New viewers of a form without buffered events, and viewers whose missed events are not buffered,
+     * get the current view (rendered owner message) instead.
+     */
+    public Multi<FormEvent> subscribe(ObjectId formId, Long lastEventId, String currentView) {
+        return Multi.createFrom().emitter(viewer -> {
+            Stream stream = this.join(formId, lastEventId, currentView, viewer);
+            viewer.onTermination(() -> {
+                synchronized (stream) {
+                    stream.viewers.remove(viewer);
+                    if (stream.viewers.isEmpty()) {
+                        stream.idleSince = System.currentTimeMillis();
+                    }
+                }
+            });
+        });
+    }
+
+    // the events of the form as server-sent events (lastEventId is the Last-Event-ID header of a reconnect)
+    public Multi<OutboundSseEvent> subscribe(Sse sse, ObjectId formId, String lastEventId, String currentView) {
+        Long lastId = null;
+        try {
+            lastId = lastEventId == null ? null : Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            // unknown id: start like a new viewer
+        }
+
+        Multi<OutboundSseEvent> events = this.subscribe(formId, lastId, currentView).map(event -> sse.newEventBuilder()
+            .id(String.valueOf(event.id))
+            .name(event.name)
+            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+            .data(event.data)
+            .build());
+        Multi<OutboundSseEvent> keepAlive = Multi.createFrom().ticks().every(KEEP_ALIVE)
+            .map(tick -> sse.newEventBuilder().comment("keep-alive").build());
+        return Multi.createBy().merging().streams(events, keepAlive);
+    }
+
+    private Stream join(ObjectId formId, Long lastEventId, String currentView, MultiEmitter<? super FormEvent> viewer) {
+        while (true) {
+            Stream stream = streams.computeIfAbsent(formId, id -> new Stream());
+            synchronized (stream) {
+                // removed in the meantime
+                if (stream.closed) {
+                    continue;
+                }
+                if (lastEventId == null) {
+                    if (!stream.buffer.isEmpty()) {
+                        viewer.emit(stream.buffer.peekLast());
+                    } else {
+                        this.emitCurrentView(stream, currentView, viewer);
+                    }
+                } else if (stream.buffer.isEmpty() || lastEventId >= stream.nextId || lastEventId < stream.buffer.peekFirst().id - 1) {
+                    // the missed events are not buffered (restart, id of another instance or older than the buffer)
+                    this.emitCurrentView(stream, currentView, viewer);
+                } else {
+                    stream.buffer.stream().filter(event -> event.id > lastEventId).forEach(viewer::emit);
+                }
+                stream.viewers.add(viewer);
+                return stream;
+            }
+        }
+    }
+
+    // the current view (not buffered, so a reconnect with this id only gets the following events)
+    private void emitCurrentView(Stream stream, String currentView, MultiEmitter<? super FormEvent> viewer) {
+        if (currentView != null) {
+            viewer.emit(new FormEvent(stream.nextId - 1, FORM_VIEW, currentView));
+        } else if (!stream.buffer.isEmpty()) {
+            viewer.emit(stream.buffer.peekLast());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.htwg_konstanz.mobilelearning.repositories.FormRevisionRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveFormRevisionRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/*
+ * Cache of serialized (ready to send) form views.
+ * A view is tagged with the version of the course it was built from; owner views
+ * (with results and participants) additionally with the revision of the form, which is
+ * stored in mongo (FormRevisionRepository), so changes on other instances change the tag as well.
+ */
+@ApplicationScoped
+public class FormViewCache {
+
+    public enum View {
+        PARTICIPANT,
+        OWNER
+    }
+
+    private static class CachedView {
+        final String tag;
+        final byte[] bytes;
+
+        CachedView(String tag, byte[] bytes) {
+            this.tag = tag;
+            this.bytes = bytes;
+        }
+    }
+
+    @ConfigProperty(name = "mobilelearning.form-view-cache.max-bytes", defaultValue = "16777216")
+    Long maxBytes;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    FormRevisionRepository formRevisionRepository;
+
+    @Inject
+    ReactiveFormRevisionRepository reactiveFormRevisionRepository;
+
+    private Cache<String, CachedView> cache;
+
+    @PostConstruct
+    void init() {
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, CachedView cachedView) -> cachedView.bytes.length)
+            .build();
+    }
+
+    /*
+     * Returns the serialized view of the form, the view is only built and serialized
+     * if there is no cached view with this tag (see tag).
+     * The tag has to be taken before building, so a view built from outdated results is never returned for newer ones.
+     */
+    public Uni<byte[]> get(ObjectId formId, View view, String tag, Supplier<Uni<?>> viewBuilder) {
+        String key = formId.toHexString() + ":" + view;
+
+        CachedView cachedView = cache.getIfPresent(key);
+        if (cachedView != null && cachedView.tag.equals(tag)) {
+            return Uni.createFrom().item(cachedView.bytes);
+        }
+
+        return viewBuilder.get().map(formView -> {
+            try {
+                byte[] bytes = objectMapper.writeValueAsBytes(formView);
+                cache.put(key, new CachedView(tag, bytes));
+                return bytes;
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // the revision of the results and participants of the form (only needed for owner views, 0 otherwise)
+    public Uni<Long> revision(ObjectId formId, View view) {
+        if (view != View.OWNER) {
+            return Uni.createFrom().item(0L);
+        }
+        return reactiveFormRevisionRepository.findRevision(formId);
+    }
+
+    /*
+     * Identifies the content of a view (also used as ETag), it changes whenever the course
+     * version changes and for owner views also when the results or participants change (revision).
+     */
+    public String tag(ObjectId formId, View view, Long courseVersion, Long revision) {
+        String tag = formId.toHexString() + "-" + view.name().toLowerCase() + "-" + (courseVersion == null ? 0L : courseVersion);
+        if (view == View.OWNER) {
+            tag += "-" + revision;
+        }
+        return tag;
+    }
+
+    // results or participants of the form changed (owner views are outdated on all instances)
+    public void resultsChanged(ObjectId formId) {
+        formRevisionRepository.increase(formId);
+    }
+
+    public void invalidateAll() {
+        formRevisionRepository.increaseAll();
+        cache.invalidateAll();
+    }
+}
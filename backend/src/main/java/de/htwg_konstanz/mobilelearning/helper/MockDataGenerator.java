@@ -0,0 +1,414 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.enums.FeedbackQuestionType;
+import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.enums.QuizQuestionType;
+import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.Form;
+import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
+import de.htwg_konstanz.mobilelearning.models.Result;
+import de.htwg_konstanz.mobilelearning.models.ResultBucket;
+import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
+import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackQuestion;
+import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
+import de.htwg_konstanz.mobilelearning.models.quiz.QuizParticipant;
+import de.htwg_konstanz.mobilelearning.models.quiz.QuizQuestion;
+import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ParticipantRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/*
+ * Generates semester-sized synthetic data (courses, forms, questions, results and participants)
+ * to measure the backend with realistic document sizes. All documents are written with bulk inserts
+ * (results together with their submissions), only a batch of courses and the pending inserts are held in memory.
+ * The same seed generates the same values (the ids are new on every run).
+ */
+@ApplicationScoped
+public class MockDataGenerator {
+
+    // documents per insertMany (result buckets hold up to ResultRepository.BUCKET_SIZE results each)
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    // courses per bulk write
+    private static final int COURSE_BATCH_SIZE = 50;
+
+    // forms are spread over a semester before now
+    private static final long SEMESTER_MILLIS = 120L * 24 * 60 * 60 * 1000;
+
+    private static final String[] TOPICS = {
+        "Kombinatorik", "Graphen", "Relationen", "Formale Sprachen", "Endliche Automaten", "Turingmaschinen",
+        "Berechenbarkeit", "Microservices", "Docker", "Kubernetes", "Datenbanken", "Netzwerke", "Algorithmen",
+    };
+
+    private static final String[] WORDS = {
+        "gut", "schnell", "verständlich", "schwer", "spannend", "langweilig", "praxisnah", "beispiele", "tempo",
+        "folien", "übungen", "klausur", "zu", "viel", "wenig", "mehr", "die", "und", "war", "sehr",
+    };
+
+    // sizes of a generated data set
+    public static class Parameters {
+        public int courses;
+        public int formsPerCourse;
+        public int questionsPerForm;
+        public int resultsPerForm;
+        public int participantsPerForm;
+        public long seed;
+        public ObjectId owner;
+
+        public Parameters(int courses, int formsPerCourse, int questionsPerForm, int resultsPerForm, int participantsPerForm, long seed, ObjectId owner) {
+            this.courses = courses;
+            this.formsPerCourse = formsPerCourse;
+            this.questionsPerForm = questionsPerForm;
+            this.resultsPerForm = resultsPerForm;
+            this.participantsPerForm = participantsPerForm;
+            this.seed = seed;
+            this.owner = owner;
+        }
+    }
+
+    private static class GeneratedCourse {
+        Course course;
+        List<FeedbackQuestion> feedbackQuestions;
+        List<QuizQuestion> quizQuestions;
+        final List<Form> forms = new ArrayList<Form>();
+    }
+
+    @Inject
+    CourseRepository courseRepository;
+
+    @Inject
+    ResultRepository resultRepository;
+
+    @Inject
+    ParticipantRepository participantRepository;
+
+    @Inject
+    AliasAllocator aliasAllocator;
+
+    /*
+     * Every course gets a pool of feedback and quiz questions, every other form is a quiz.
+     * All respondents answer every question of a form (a few skip a question), quiz respondents
+     * are the participants first. Returns the number of generated documents and the time it took.
+     * Courses are generated and written in batches, the results and participants of a course are only
+     * generated after the course was written (a rejected course leaves no orphaned results behind).
+     */
+    public Map<String, Object> generate(Parameters parameters) {
+        long start = System.currentTimeMillis();
+        Random random = new Random(parameters.seed);
+
+        List<ResultBucket> buckets = new ArrayList<ResultBucket>();
+        List<QuizParticipant> participants = new ArrayList<QuizParticipant>();
+        List<String> errors = new ArrayList<String>();
+        long courseCount = 0;
+        long results = 0;
+        long forms = 0;
+        long bucketCount = 0;
+        long participantCount = 0;
+
+        for (int from = 0; from < parameters.courses; from += COURSE_BATCH_SIZE) {
+            List<GeneratedCourse> batch = new ArrayList<GeneratedCourse>();
+            for (int c = from; c < Math.min(from + COURSE_BATCH_SIZE, parameters.courses); c++) {
+                batch.add(this.course(c, parameters, random));
+            }
+
+            // the courses get their connect codes with the bulk write
+            List<Course> courses = new ArrayList<Course>();
+            batch.forEach(generated -> courses.add(generated.course));
+            Map<ObjectId, String> courseErrors = courseRepository.persistOrUpdateAll(courses, Map.of());
+            errors.addAll(courseErrors.values());
+
+            for (GeneratedCourse generated : batch) {
+                if (courseErrors.containsKey(generated.course.getId())) {
+                    continue;
+                }
+                courseCount++;
+
+                for (int f = 0; f < generated.forms.size(); f++) {
+                    Form form = generated.forms.get(f);
+                    // forms of a course are held one after another during the semester, the last one is still open
+                    long heldAt = start - SEMESTER_MILLIS + (SEMESTER_MILLIS * (f + 1)) / (parameters.formsPerCourse + 1);
+                    boolean isQuiz = form instanceof QuizForm;
+                    forms++;
+
+                    // respondents of the form (quiz respondents are participants first)
+                    List<ObjectId> respondents = new ArrayList<ObjectId>();
+                    Map<ObjectId, QuizParticipant> participantsOfForm = new HashMap<ObjectId, QuizParticipant>();
+                    if (isQuiz) {
+                        for (int p = 0; p < parameters.participantsPerForm; p++) {
+                            // the first aliases of the permutation of the form, the cursor is moved behind them once
+                            QuizParticipant participant = new QuizParticipant(new ObjectId(), aliasAllocator.at(form.getId(), p));
+                            participant.courseId = generated.course.getId();
+                            participant.formId = form.getId();
+                            participantsOfForm.put(participant.getUserId(), participant);
+                            respondents.add(participant.getUserId());
+                        }
+                        participantRepository.reserveAliasIndexes(form.getId(), parameters.participantsPerForm);
+                    }
+                    // the open form has participants but no results yet
+                    int resultCount = form.getStatus() == FormStatus.FINISHED ? parameters.resultsPerForm : 0;
+                    while (respondents.size() < resultCount) {
+                        respondents.add(new ObjectId());
+                    }
+                    if (respondents.size() > resultCount) {
+                        respondents = respondents.subList(0, resultCount);
+                    }
+
+                    // how well the form went (shifts the values of all its questions)
+                    double mood = random.nextGaussian() * 0.15;
+
+                    for (int q = 0; q < form.getQuestions().size(); q++) {
+                        QuestionWrapper wrapper = form.getQuestions().get(q);
+                        ResultBucket bucket = null;
+
+                        for (int r = 0; r < respondents.size(); r++) {
+                            // about 5 % of the respondents skip a question
+                            if (random.nextDouble() < 0.05) {
+                                continue;
+                            }
+
+                            List<String> values;
+                            if (isQuiz) {
+                                QuizQuestion question = generated.quizQuestions.get(q);
+                                values = this.quizValues(question, mood, random);
+                                QuizParticipant participant = participantsOfForm.get(respondents.get(r));
+                                if (participant != null && question.getHasCorrectAnswers()) {
+                                    participant.increaseScore(question.checkAnswer(values));
+                                }
+                            } else {
+                                values = this.feedbackValues(generated.feedbackQuestions.get(q), q, mood, random);
+                            }
+
+                            // answers come in during the first minutes of the form
+                            Result result = new Result(Hasher.hash(respondents.get(r).toHexString()), values);
+                            result.id = new ObjectId(new Date(heldAt + random.nextInt(10 * 60 * 1000)));
+
+                            if (bucket == null || bucket.count >= ResultRepository.BUCKET_SIZE) {
+                                bucket = new ResultBucket(generated.course.getId(), form.getId(), wrapper.getId());
+                                buckets.add(bucket);
+                                bucketCount++;
+                            }
+                            bucket.results.add(result);
+                            bucket.count++;
+                            results++;
+
+                            if (buckets.size() >= INSERT_BATCH_SIZE) {
+                                resultRepository.persistWithSubmissions(buckets);
+                                buckets = new ArrayList<ResultBucket>();
+                                bucket = null;
+                            }
+                        }
+                    }
+
+                    // the scores are final after the results of the form
+                    participants.addAll(participantsOfForm.values());
+                    participantCount += participantsOfForm.size();
+                    if (participants.size() >= INSERT_BATCH_SIZE) {
+                        participantRepository.persist(participants);
+                        participants = new ArrayList<QuizParticipant>();
+                    }
+                }
+            }
+        }
+
+        if (!buckets.isEmpty()) {
+            resultRepository.persistWithSubmissions(buckets);
+        }
+        if (!participants.isEmpty()) {
+            participantRepository.persist(participants);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<String, Object>();
+        summary.put("courses", courseCount);
+        summary.put("forms", forms);
+        summary.put("resultBuckets", bucketCount);
+        summary.put("results", results);
+        summary.put("participants", participantCount);
+        summary.put("errors", errors);
+        summary.put("millis", System.currentTimeMillis() - start);
+        return summary;
+    }
+
+    // a course with its questions and forms (in the order they are held)
+    private GeneratedCourse course(int index, Parameters parameters, Random random) {
+        GeneratedCourse generated = new GeneratedCourse();
+        Course course = new Course("Generated Course " + (index + 1), "Synthetic course " + (index + 1) + " (seed " + parameters.seed + ")");
+        course.setKey("GEN-" + course.getId().toHexString());
+        if (parameters.owner != null) {
+            course.addOwner(parameters.owner);
+        }
+        generated.course = course;
+
+        generated.feedbackQuestions = this.feedbackQuestions(parameters.questionsPerForm, random);
+        generated.feedbackQuestions.forEach(course::addFeedbackQuestion);
+        generated.quizQuestions = this.quizQuestions(parameters.questionsPerForm, random);
+        generated.quizQuestions.forEach(course::addQuizQuestion);
+
+        for (int f = 0; f < parameters.formsPerCourse; f++) {
+            FormStatus status = f == parameters.formsPerCourse - 1 ? FormStatus.NOT_STARTED : FormStatus.FINISHED;
+            generated.forms.add(f % 2 == 1
+                ? this.quizForm(course, generated.quizQuestions, f, status)
+                : this.feedbackForm(course, generated.feedbackQuestions, f, status));
+        }
+        return generated;
+    }
+
+    private List<FeedbackQuestion> feedbackQuestions(int count, Random random) {
+        FeedbackQuestionType[] types = FeedbackQuestionType.values();
+        List<FeedbackQuestion> questions = new ArrayList<FeedbackQuestion>();
+        for (int i = 0; i < count; i++) {
+            FeedbackQuestionType type = types[i % types.length];
+            List<String> options = type == FeedbackQuestionType.SINGLE_CHOICE ? this.topics(4 + random.nextInt(4), random) : null;
+            questions.add(new FeedbackQuestion(
+                "Frage " + (i + 1),
+                "Generierte " + type + " Frage " + (i + 1),
+                type,
+                options,
+                "GEN-F-Q-" + new ObjectId().toHexString()
+            ));
+        }
+        return questions;
+    }
+
+    private List<QuizQuestion> quizQuestions(int count, Random random) {
+        QuizQuestionType[] types = QuizQuestionType.values();
+        List<QuizQuestion> questions = new ArrayList<QuizQuestion>();
+        for (int i = 0; i < count; i++) {
+            QuizQuestionType type = types[i % types.length];
+            List<String> options = null;
+            List<String> correctAnswers = null;
+            if (type == QuizQuestionType.SINGLE_CHOICE) {
+                options = this.topics(4, random);
+                correctAnswers = List.of(String.valueOf(random.nextInt(options.size())));
+            } else if (type == QuizQuestionType.MULTIPLE_CHOICE) {
+                options = this.topics(5, random);
+                correctAnswers = List.of("0", String.valueOf(1 + random.nextInt(options.size() - 1)));
+            } else if (type == QuizQuestionType.YES_NO) {
+                correctAnswers = List.of(random.nextBoolean() ? "yes" : "no");
+            }
+            questions.add(new QuizQuestion(
+                "Quizfrage " + (i + 1),
+                "Generierte " + type + " Quizfrage " + (i + 1),
+                type,
+                options,
+                correctAnswers != null,
+                correctAnswers != null ? correctAnswers : List.of(),
+                "GEN-Q-Q-" + new ObjectId().toHexString()
+            ));
+        }
+        return questions;
+    }
+
+    private FeedbackForm feedbackForm(Course course, List<FeedbackQuestion> questions, int index, FormStatus status) {
+        List<QuestionWrapper> wrappers = new ArrayList<QuestionWrapper>();
+        questions.forEach(question -> wrappers.add(new QuestionWrapper(question.getId(), null)));
+        FeedbackForm form = new FeedbackForm(course.getId(), "Feedback " + (index + 1), "Generiertes Feedback " + (index + 1), wrappers, status);
+        course.addFeedbackForm(form);
+        return form;
+    }
+
+    private QuizForm quizForm(Course course, List<QuizQuestion> questions, int index, FormStatus status) {
+        List<QuestionWrapper> wrappers = new ArrayList<QuestionWrapper>();
+        questions.forEach(question -> wrappers.add(new QuestionWrapper(question.getId(), null)));
+        QuizForm form = new QuizForm(course.getId(), "Quiz " + (index + 1), "Generiertes Quiz " + (index + 1), wrappers, status, 0, false);
+        course.addQuizForm(form);
+        return form;
+    }
+
+    // values like the clients send them (stars 1-5, slider 0-10, yes/no, index of the option, free text)
+    private List<String> feedbackValues(FeedbackQuestion question, int questionIndex, double mood, Random random) {
+        switch (question.type) {
+            case STARS:
+                // most ratings are 4 or 5
+                return List.of(String.valueOf(this.clamp((int) Math.round(4 + mood * 5 + random.nextGaussian() * 0.9), 1, 5)));
+            case SLIDER:
+                // every question has its own center (some topics are easier than others)
+                double center = 4 + (questionIndex * 7919 % 5) + mood * 10;
+                return List.of(String.valueOf(this.clamp((int) Math.round(center + random.nextGaussian() * 2), 0, 10)));
+            case YES_NO:
+                return List.of(random.nextDouble() < 0.7 + mood ? "yes" : "no");
+            case SINGLE_CHOICE:
+                return List.of(String.valueOf(this.zipf(question.getOptions().size(), random)));
+            default:
+                return List.of(this.text(3 + random.nextInt(10), random));
+        }
+    }
+
+    // about 60 % of the answers are correct, wrong answers prefer the first options
+    private List<String> quizValues(QuizQuestion question, double mood, Random random) {
+        boolean correct = random.nextDouble() < 0.6 + mood;
+        switch (question.type) {
+            case YES_NO:
+                String right = question.getCorrectAnswers().get(0);
+                return List.of(correct ? right : (right.equals("yes") ? "no" : "yes"));
+            case SINGLE_CHOICE:
+                return correct ? question.getCorrectAnswers() : List.of(String.valueOf(this.zipf(question.getOptions().size(), random)));
+            case MULTIPLE_CHOICE:
+                if (correct) {
+                    return question.getCorrectAnswers();
+                }
+                List<String> chosen = new ArrayList<String>();
+                for (int i = 0; i < question.getOptions().size(); i++) {
+                    if (random.nextDouble() < 0.35) {
+                        chosen.add(String.valueOf(i));
+                    }
+                }
+                return chosen;
+            case WORD_CLOUD:
+                return List.of(WORDS[this.zipf(WORDS.length, random)]);
+            default:
+                return List.of(this.text(2 + random.nextInt(8), random));
+        }
+    }
+
+    // index in [0, size) with probability ~ 1 / (index + 1)
+    private int zipf(int size, Random random) {
+        double total = 0;
+        for (int i = 1; i <= size; i++) {
+            total += 1.0 / i;
+        }
+        double target = random.nextDouble() * total;
+        for (int i = 1; i <= size; i++) {
+            target -= 1.0 / i;
+            if (target <= 0) {
+                return i - 1;
+            }
+        }
+        return size - 1;
+    }
+
+    private List<String> topics(int count, Random random) {
+        List<String> topics = new ArrayList<String>();
+        int offset = random.nextInt(TOPICS.length);
+        for (int i = 0; i < count; i++) {
+            topics.add(TOPICS[(offset + i) % TOPICS.length]);
+        }
+        return topics;
+    }
+
+    private String text(int words, Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[this.zipf(WORDS.length, random)]);
+        }
+        return text.toString();
+    }
+
+    private int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,122 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import de.htwg_konstanz.mobilelearning.models.MoodleSyncUser;
+import de.htwg_konstanz.mobilelearning.repositories.MoodleEnrolmentRepository;
+import de.htwg_konstanz.mobilelearning.repositories.MoodleSyncUserRepository;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/*
+ * Keeps the stored moodle enrolments of the active users up to date, so requests read the enrolments
+ * from the database instead of moodle. Only if enabled (mobilelearning.moodle.sync-enabled), because
+ * the password of a login is forwarded to moodle to get a token.
+ * The eligible users are stored in mongo (active within the TTL after a login or a JWT refresh, with a
+ * moodle token not older than the max age), every user is synced by one instance per interval.
+ * Users are synced in batches, so at most batch-size requests to moodle run at the same time.
+ */
+@ApplicationScoped
+public class MoodleEnrolmentSync {
+
+    @ConfigProperty(name = "mobilelearning.moodle.sync-enabled", defaultValue = "false")
+    Boolean syncEnabled;
+
+    @ConfigProperty(name = "mobilelearning.moodle.sync-batch-size", defaultValue = "20")
+    Integer batchSize;
+
+    @ConfigProperty(name = "mobilelearning.moodle.courses-ttl-minutes", defaultValue = "60")
+    Long ttlMinutes;
+
+    // the token of a login is used at most this long (a new login is needed after that)
+    @ConfigProperty(name = "mobilelearning.moodle.token-max-age-days", defaultValue = "30")
+    Long tokenMaxAgeDays;
+
+    @ConfigProperty(name = "mobilelearning.moodle.sync-interval", defaultValue = "15m")
+    Duration syncInterval;
+
+    @Inject
+    MoodleInterface moodleInterface;
+
+    @Inject
+    MoodleEnrolmentRepository moodleEnrolmentRepository;
+
+    @Inject
+    MoodleSyncUserRepository moodleSyncUserRepository;
+
+    // logs the user into moodle in the background and stores the enrolments (does not delay the login)
+    public void onLogin(String username, String password) {
+        if (!syncEnabled) {
+            return;
+        }
+        moodleInterface.login(username, password)
+            .thenAccept(session -> {
+                moodleSyncUserRepository.login(username, session.token, session.userId, this.activeUntil());
+                this.store(username, session.userId, session.courses);
+            })
+            .exceptionally(e -> {
+                System.out.println("Moodle login of " + username + " failed: " + e.getMessage());
+                return null;
+            });
+    }
+
+    // the user renewed the JWT (no password), the enrolments stay synced with the token of the last login
+    public void onActivity(String username) {
+        if (syncEnabled) {
+            moodleSyncUserRepository.extend(username, this.activeUntil());
+        }
+    }
+
+    @Scheduled(every = "${mobilelearning.moodle.sync-interval:15m}", delayed = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void syncActiveUsers() {
+        if (!syncEnabled) {
+            return;
+        }
+        Date loggedInAfter = new Date(System.currentTimeMillis() - tokenMaxAgeDays * 24L * 60 * 60 * 1000);
+        // users synced by another instance in this interval are skipped (a bit less than the interval for the jitter)
+        Date syncedBefore = new Date(System.currentTimeMillis() - syncInterval.toMillis() * 9 / 10);
+        List<MoodleSyncUser> users = moodleSyncUserRepository.findEligible(loggedInAfter);
+
+        int changes = 0;
+        for (int from = 0; from < users.size(); from += batchSize) {
+            List<MoodleSyncUser> batch = users.subList(from, Math.min(from + batchSize, users.size()));
+
+            // fetch the batch in parallel, then store the changes one by one
+            Map<MoodleSyncUser, CompletableFuture<List<MoodleCourse>>> fetched = new LinkedHashMap<MoodleSyncUser, CompletableFuture<List<MoodleCourse>>>();
+            batch.forEach(user -> {
+                if (moodleSyncUserRepository.claim(user.getUsername(), syncedBefore)) {
+                    fetched.put(user, moodleInterface.getCoursesWithToken(user.getToken(), user.getMoodleUserId()));
+                }
+            });
+            for (Map.Entry<MoodleSyncUser, CompletableFuture<List<MoodleCourse>>> entry : fetched.entrySet()) {
+                try {
+                    changes += this.store(entry.getKey().getUsername(), entry.getKey().getMoodleUserId(), entry.getValue().join());
+                } catch (Exception e) {
+                    System.out.println("Moodle sync of " + entry.getKey().getUsername() + " failed: " + e.getMessage());
+                }
+            }
+        }
+        if (changes > 0) {
+            System.out.println("Moodle sync of " + users.size() + " users changed " + changes + " enrolments");
+        }
+    }
+
+    private Date activeUntil() {
+        return new Date(System.currentTimeMillis() + ttlMinutes * 60 * 1000);
+    }
+
+    private int store(String username, Integer moodleUserId, List<MoodleCourse> courses) {
+        if (courses == null) {
+            return 0;
+        }
+        return moodleEnrolmentRepository.sync(username, moodleUserId, courses);
+    }
+}
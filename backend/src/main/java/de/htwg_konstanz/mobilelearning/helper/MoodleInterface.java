@@ -1,102 +1,250 @@
 package de.htwg_konstanz.mobilelearning.helper;
 
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/*
+ * Client of the moodle web services (login and enrolled courses of a user).
+ * One pooled HTTP client is shared by all requests, the enrolled courses are cached per user
+ * and refreshed in the background with the token of the last login.
+ * A session expires TTL after the last login of the user (background refreshes do not extend it).
+ */
+@ApplicationScoped
 public class MoodleInterface {
-    public List<MoodleCourse> courses;
-    private String username;
-    private String password;
-    private String token;
-    private Integer userId;
-
-    public MoodleInterface(String username,
-        String password) {
-        this.username = username;
-        this.password = password;
-    }
 
-    public Boolean login() {
+    // token, moodle user id and enrolled courses of a user
+    public static class MoodleSession {
+        public final String token;
+        public final Integer userId;
+        public final List<MoodleCourse> courses;
+        public final long loggedInAt;
 
-        ObjectMapper mapper = new ObjectMapper();
-        
-        try {
-            
-            // get the token from
-            // https://moodle.htwg-konstanz.de/moodle/login/token.php?username=USERNAME&password=PASSWORD&service=SERVICESHORTNAME
-            CloseableHttpClient client = HttpClients.createDefault();
-            HttpGet request = new HttpGet("https://moodle.htwg-konstanz.de/moodle/login/token.php?username=" + this.username + "&password=" + this.password + "&service=moodle_mobile_app");
-            MoodleTokenResponse tokenResponse = mapper.readValue(client.execute(request).getEntity().getContent(), MoodleTokenResponse.class);
-            this.token = tokenResponse.token;
-            // System.out.println("Successfully logged in as " + this.username + " with token " + this.token.substring(0, 5) + "...");
-
-            // get user id
-            String wsFunction = "core_webservice_get_site_info";
-            request = new HttpGet("https://moodle.htwg-konstanz.de/moodle/webservice/rest/server.php?wstoken=" + this.token + "&wsfunction=" + wsFunction + "&moodlewsrestformat=json");
-            String response = EntityUtils.toString(client.execute(request).getEntity());
-            MoodleUserIdResponse userIdResponse = mapper.readValue(response, MoodleUserIdResponse.class);
-            Integer userId = userIdResponse.userid;
+        MoodleSession(String token, Integer userId, List<MoodleCourse> courses, long loggedInAt) {
+            this.token = token;
             this.userId = userId;
-            // System.out.println("Got user id: " + userId);
-
-            // get all courses
-            wsFunction = "core_enrol_get_users_courses";
-            request = new HttpGet("https://moodle.htwg-konstanz.de/moodle/webservice/rest/server.php?wstoken=" + this.token + "&wsfunction=" + wsFunction + "&userid=" + userId + "&moodlewsrestformat=json");
-            response = EntityUtils.toString(client.execute(request).getEntity());
-            MoodleCourse[] courses = mapper.readValue(response, MoodleCourse[].class);
-            this.courses = List.of(courses);
-            // System.out.println("Got courses: ");
-            // System.out.println(this.courses);
-            
-        } catch (Exception e) {
-            System.out.println("Error while logging into moodle: " + e.getMessage());
-            return false;
+            this.courses = courses;
+            this.loggedInAt = loggedInAt;
         }
+    }
 
-        return true;
-
-    };
+    // e.g. a local stub server for tests and benchmarks
+    @ConfigProperty(name = "mobilelearning.moodle.url", defaultValue = "https://moodle.htwg-konstanz.de/moodle")
+    String baseUrl;
+
+    @ConfigProperty(name = "mobilelearning.moodle.timeout-millis", defaultValue = "5000")
+    Long timeoutMillis;
+
+    @ConfigProperty(name = "mobilelearning.moodle.courses-ttl-minutes", defaultValue = "60")
+    Long coursesTtlMinutes;
+
+    @ConfigProperty(name = "mobilelearning.moodle.courses-refresh-minutes", defaultValue = "10")
+    Long coursesRefreshMinutes;
+
+    // the least recently used sessions are dropped first
+    @ConfigProperty(name = "mobilelearning.moodle.max-sessions", defaultValue = "10000")
+    Long maxSessions;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpClient client;
+    private AsyncLoadingCache<String, MoodleSession> sessions;
+
+    // the moodle user id of a username never changes
+    private final Map<String, Integer> userIds = new ConcurrentHashMap<String, Integer>();
+
+    @PostConstruct
+    void init() {
+        // keeps the connections to moodle open between requests (HTTP/2 if available)
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(timeoutMillis))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+        this.sessions = Caffeine.newBuilder()
+            .maximumSize(maxSessions)
+            .expireAfter(new Expiry<String, MoodleSession>() {
+                @Override
+                public long expireAfterCreate(String username, MoodleSession session, long currentTime) {
+                    return remainingNanos(session);
+                }
+
+                @Override
+                public long expireAfterUpdate(String username, MoodleSession session, long currentTime, long currentDuration) {
+                    return remainingNanos(session);
+                }
+
+                @Override
+                public long expireAfterRead(String username, MoodleSession session, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .refreshAfterWrite(Duration.ofMinutes(coursesRefreshMinutes))
+            .buildAsync(new AsyncCacheLoader<String, MoodleSession>() {
+                @Override
+                public CompletableFuture<MoodleSession> asyncLoad(String username, Executor executor) {
+                    // sessions are only added by login (the password is needed for a new token)
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                @Override
+                public CompletableFuture<MoodleSession> asyncReload(String username, MoodleSession session, Executor executor) {
+                    return fetchCourses(session.token, session.userId)
+                        .thenApply(courses -> new MoodleSession(session.token, session.userId, courses, session.loggedInAt));
+                }
+            });
+    }
 
-    public List<MoodleCourse> getCourses() {
+    /*
+     * Logs the user in (the password is checked by moodle on every login) and returns the enrolled courses.
+     * The courses come from the cache if the user logged in before the TTL, otherwise the site info
+     * and the courses are fetched (in parallel if the moodle user id is already known).
+     */
+    public CompletableFuture<MoodleSession> login(String username, String password) {
+        return this.fetchToken(username, password).thenCompose(token -> {
+            CompletableFuture<MoodleSession> cached = sessions.getIfPresent(username);
+            if (cached != null) {
+                return cached.thenCompose(session -> {
+                    if (session == null || !session.token.equals(token)) {
+                        return this.loadSession(username, token);
+                    }
+                    // the login starts the TTL again
+                    MoodleSession renewed = new MoodleSession(session.token, session.userId, session.courses, System.currentTimeMillis());
+                    sessions.put(username, CompletableFuture.completedFuture(renewed));
+                    return CompletableFuture.completedFuture(renewed);
+                });
+            }
+            return this.loadSession(username, token);
+        });
+    }
 
-        // if courses are already set return them if not fetch them 
-        if (this.courses != null) {
-            return this.courses;
+    // enrolled courses of the user (null if the login failed)
+    public List<MoodleCourse> getCourses(String username, String password) {
+        try {
+            return this.login(username, password).join().courses;
+        } catch (CompletionException e) {
+            System.out.println("Error while getting courses from moodle: " + e.getCause().getMessage());
+            return null;
         }
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
+    // enrolled courses with the token of an earlier login (e.g. for the background sync)
+    public CompletableFuture<List<MoodleCourse>> getCoursesWithToken(String token, Integer userId) {
+        return this.fetchCourses(token, userId);
+    }
 
-        try {
+    public void invalidate(String username) {
+        sessions.synchronous().invalidate(username);
+    }
 
-            // get all courses
-            CloseableHttpClient client = HttpClients.createDefault();
-            String wsFunction = "core_enrol_get_users_courses";
-            HttpGet request = new HttpGet("https://moodle.htwg-konstanz.de/moodle/webservice/rest/server.php?wstoken=" + this.token + "&wsfunction=" + wsFunction + "&userid=" + userId + "&moodlewsrestformat=json");
-            String response = EntityUtils.toString(client.execute(request).getEntity());
-            MoodleCourse[] courses = mapper.readValue(response, MoodleCourse[].class);
-            this.courses = List.of(courses);
-            // System.out.println("Got courses: ");
-            // System.out.println(this.courses);
+    // time left until the TTL since the last login is over
+    private long remainingNanos(MoodleSession session) {
+        long elapsedMillis = System.currentTimeMillis() - session.loggedInAt;
+        return Math.max(0, Duration.ofMinutes(coursesTtlMinutes).minusMillis(elapsedMillis).toNanos());
+    }
 
-            return this.courses;
+    private CompletableFuture<MoodleSession> loadSession(String username, String token) {
+        CompletableFuture<Integer> userId = this.fetchUserId(token).thenApply(id -> {
+            userIds.put(username, id);
+            return id;
+        });
+
+        // the site info is still fetched to check that the known user id belongs to the token
+        Integer knownUserId = userIds.get(username);
+        CompletableFuture<List<MoodleCourse>> courses = knownUserId != null
+            ? this.fetchCourses(token, knownUserId)
+            : userId.thenCompose(id -> this.fetchCourses(token, id));
+
+        CompletableFuture<MoodleSession> session = userId.thenCombine(courses, (id, enrolledCourses) -> {
+            if (knownUserId != null && !knownUserId.equals(id)) {
+                throw new IllegalStateException("Moodle user id of " + username + " changed");
+            }
+            return new MoodleSession(token, id, enrolledCourses, System.currentTimeMillis());
+        });
+        return session.thenApply(loaded -> {
+            sessions.put(username, CompletableFuture.completedFuture(loaded));
+            return loaded;
+        });
+    }
 
-        } catch (Exception e) {
-            System.out.println("Error while getting courses from moodle: " + e.getMessage());
-            return null;
-        }
+    private CompletableFuture<String> fetchToken(String username, String password) {
+        // the credentials are sent in the body (not in the url, which could end up in logs)
+        return this.post("/login/token.php", Map.of("username", username, "password", password, "service", "moodle_mobile_app"))
+            .thenApply(response -> {
+                if (!response.hasNonNull("token")) {
+                    throw new IllegalArgumentException("Moodle login failed: " + response.path("error").asText("no token"));
+                }
+                return response.get("token").asText();
+            });
+    }
+
+    private CompletableFuture<Integer> fetchUserId(String token) {
+        return this.callFunction(token, "core_webservice_get_site_info", Map.of())
+            .thenApply(response -> mapper.convertValue(response, MoodleUserIdResponse.class).userid);
+    }
+
+    private CompletableFuture<List<MoodleCourse>> fetchCourses(String token, Integer userId) {
+        return this.callFunction(token, "core_enrol_get_users_courses", Map.of("userid", userId.toString()))
+            .thenApply(response -> List.of(mapper.convertValue(response, MoodleCourse[].class)));
+    }
 
+    private CompletableFuture<JsonNode> callFunction(String token, String wsFunction, Map<String, String> parameters) {
+        Map<String, String> form = new HashMap<String, String>(parameters);
+        form.put("wstoken", token);
+        form.put("wsfunction", wsFunction);
+        form.put("moodlewsrestformat", "json");
+        return this.post("/webservice/rest/server.php", form).thenApply(response -> {
+            // moodle answers errors with status 200 and an exception object
+            if (response.isObject() && response.has("exception")) {
+                throw new IllegalStateException("Moodle function " + wsFunction + " failed: " + response.path("message").asText());
+            }
+            return response;
+        });
     }
 
-    // main method for testing
-    public static void main(String[] args) {
-        MoodleInterface moodle = new MoodleInterface("xxx", "xxx");
-        moodle.login();
-        moodle.getCourses();
+    private CompletableFuture<JsonNode> post(String path, Map<String, String> form) {
+        StringJoiner body = new StringJoiner("&");
+        form.forEach((name, value) -> body.add(URLEncoder.encode(name, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8)));
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(Duration.ofMillis(timeoutMillis))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+            .build();
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Moodle answered " + response.statusCode() + " for " + path);
+            }
+            try {
+                return mapper.readTree(response.body());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 }
@@ -1,15 +0,0 @@
-package de.htwg_konstanz.mobilelearning.helper;
-
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-class MoodleTokenResponse {
-    public String token;
-
-    public MoodleTokenResponse(
-        @JsonProperty("token") String token
-    ) {
-        this.token = token;
-    }
-}
\ No newline at end of file
@@ -0,0 +1,204 @@
+package de.htwg_konstanz.mobilelearning.helper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.client.MongoCursor;
+
+import de.htwg_konstanz.mobilelearning.enums.FormType;
+import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.Form;
+import de.htwg_konstanz.mobilelearning.models.Question;
+import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
+import de.htwg_konstanz.mobilelearning.models.Result;
+import de.htwg_konstanz.mobilelearning.models.ResultBucket;
+
+/*
+ * Writes the results of result buckets as NDJSON (one object per line) or CSV (one row per result).
+ * The buckets are written while reading the cursor, so the memory use does not grow with the export.
+ */
+public class ResultExport {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv; charset=UTF-8", "csv");
+
+        public final String mediaType;
+        public final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+    }
+
+    private static final String[] COLUMNS = {
+        "courseId", "formId", "formType", "formName", "questionWrapperId", "questionName",
+        "resultId", "submittedAt", "participant", "values"
+    };
+
+    // cells starting with these characters are interpreted as formulas by spreadsheet programs (numbers are fine)
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+    private static final Pattern NUMBER = Pattern.compile("^[+-]?\\d+([.,]\\d+)?$");
+
+    // the form and question of a question wrapper (looked up once per export)
+    private static class ExportedQuestion {
+        final String formType;
+        final String formName;
+        final String questionName;
+
+        ExportedQuestion(Form form, FormType formType, Question question) {
+            this.formType = formType.name();
+            this.formName = form.getName();
+            this.questionName = question == null ? null : question.getName();
+        }
+    }
+
+    private final String courseId;
+    private final Map<ObjectId, ExportedQuestion> questions = new HashMap<ObjectId, ExportedQuestion>();
+    private final Date from;
+    private final Date until;
+
+    // from and until (exclusive) are optional
+    public ResultExport(Course course, Date from, Date until) {
+        this.courseId = course.getId().toHexString();
+        this.from = from;
+        this.until = until;
+        if (course.getFeedbackForms() != null) {
+            course.getFeedbackForms().forEach(form -> {
+                for (QuestionWrapper wrapper : form.getQuestions()) {
+                    questions.put(wrapper.getId(), new ExportedQuestion(form, FormType.FEEDBACK, course.getFeedbackQuestionById(wrapper.getQuestionId())));
+                }
+            });
+        }
+        if (course.getQuizForms() != null) {
+            course.getQuizForms().forEach(form -> {
+                for (QuestionWrapper wrapper : form.getQuestions()) {
+                    questions.put(wrapper.getId(), new ExportedQuestion(form, FormType.QUIZ, course.getQuizQuestionById(wrapper.getQuestionId())));
+                }
+            });
+        }
+    }
+
+    public void write(MongoCursor<ResultBucket> buckets, Format format, OutputStream output) throws IOException {
+        if (format == Format.CSV) {
+            this.writeCsv(buckets, output);
+        } else {
+            this.writeNdjson(buckets, output);
+        }
+    }
+
+    private void writeNdjson(MongoCursor<ResultBucket> buckets, OutputStream output) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(output)) {
+            // every object ends with a line break instead of the default separator between root values
+            generator.setRootValueSeparator(null);
+            while (buckets.hasNext()) {
+                ResultBucket bucket = buckets.next();
+                for (Result result : bucket.getResults()) {
+                    String[] row = this.row(bucket, result);
+                    if (row == null) {
+                        continue;
+                    }
+                    generator.writeStartObject();
+                    for (int i = 0; i < COLUMNS.length - 1; i++) {
+                        generator.writeStringField(COLUMNS[i], row[i]);
+                    }
+                    generator.writeArrayFieldStart("values");
+                    for (String value : values(result)) {
+                        generator.writeString(value);
+                    }
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+            }
+        }
+    }
+
+    private void writeCsv(MongoCursor<ResultBucket> buckets, OutputStream output) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            this.writeCsvRow(writer, COLUMNS);
+            while (buckets.hasNext()) {
+                ResultBucket bucket = buckets.next();
+                for (Result result : bucket.getResults()) {
+                    String[] row = this.row(bucket, result);
+                    if (row != null) {
+                        // multiple values (e.g. multiple choice) are separated by semicolons
+                        row[COLUMNS.length - 1] = String.join(";", values(result));
+                        this.writeCsvRow(writer, row);
+                    }
+                }
+            }
+        }
+    }
+
+    // the columns of a result without the values (null if the result is outside of the time range)
+    private String[] row(ResultBucket bucket, Result result) {
+        Date submittedAt = result.getId() == null ? null : result.getId().getDate();
+        if ((from != null || until != null) && submittedAt == null) {
+            return null;
+        }
+        if ((from != null && submittedAt.before(from)) || (until != null && !submittedAt.before(until))) {
+            return null;
+        }
+
+        ExportedQuestion question = questions.get(bucket.getQuestionWrapperId());
+        String participant = result.hashedUserId != null
+            ? result.hashedUserId
+            : result.getUserId() == null ? null : Hasher.hash(result.getUserId().toHexString());
+
+        return new String[] {
+            courseId,
+            bucket.getFormId().toHexString(),
+            question == null ? null : question.formType,
+            question == null ? null : question.formName,
+            bucket.getQuestionWrapperId().toHexString(),
+            question == null ? null : question.questionName,
+            result.getId() == null ? null : result.getId().toHexString(),
+            submittedAt == null ? null : Instant.ofEpochMilli(submittedAt.getTime()).toString(),
+            participant,
+            null
+        };
+    }
+
+    private static List<String> values(Result result) {
+        return result.getValues() == null ? List.of() : result.getValues();
+    }
+
+    private void writeCsvRow(Writer writer, String[] cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvCell(cells[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String csvCell(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0 && !NUMBER.matcher(value).matches()) {
+            value = "'" + value;
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,59 @@
+package de.htwg_konstanz.mobilelearning.models;
+
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.enums.FormType;
+
+// registry entry of a connect code (resolves the code to the form it belongs to)
+public class ConnectCode {
+    public ObjectId id;
+    public Integer code;
+    public FormType type;
+    public ObjectId courseId;
+    public ObjectId formId;
+
+    // set when the form is finished, the code is recycled some time after that
+    public Date finishedAt;
+
+    public ConnectCode() {
+    }
+
+    public ConnectCode(Integer code, FormType type, ObjectId courseId, ObjectId formId) {
+        this.id = new ObjectId();
+        this.code = code;
+        this.type = type;
+        this.courseId = courseId;
+        this.formId = formId;
+        this.finishedAt = null;
+    }
+
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public Integer getCode() {
+        return this.code;
+    }
+
+    public FormType getType() {
+        return this.type;
+    }
+
+    public ObjectId getCourseId() {
+        return this.courseId;
+    }
+
+    public ObjectId getFormId() {
+        return this.formId;
+    }
+
+    public Date getFinishedAt() {
+        return this.finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
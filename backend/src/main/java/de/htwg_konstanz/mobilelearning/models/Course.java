@@ -1,10 +1,14 @@
 package de.htwg_konstanz.mobilelearning.models;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.types.ObjectId;
 
+import de.htwg_konstanz.mobilelearning.helper.ContentHash;
 import de.htwg_konstanz.mobilelearning.models.auth.User;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackQuestion;
@@ -30,6 +34,16 @@ public class Course implements Serializable {
     public List<QuizForm> quizForms;
     public List<QuizQuestion> quizQuestions;
 
+    // increased on every write (used to detect outdated cached courses)
+    public Long version;
+
+    // content hash of the api course of the last sync (unchanged courses are skipped, see ApiService)
+    public String apiHash;
+
+    // lookup indexes (built on the first lookup, not stored, no getter so it is not serialized)
+    @BsonIgnore
+    private transient volatile Indexes indexes;
+
     public Course() {
     }
 
@@ -51,6 +65,15 @@ public class Course implements Serializable {
         return this.id;
     }
 
+    // version
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     // name
     public String getName() {
         return this.name;
@@ -105,42 +128,36 @@ public class Course implements Serializable {
     }
 
     public FeedbackForm getFeedbackFormById(ObjectId feedbackFormId) {
-        for (FeedbackForm feedbackForm : this.feedbackForms) {
-            if (feedbackForm.getId().equals(feedbackFormId)) {
-                return feedbackForm;
-            }
-        }
-        return null;
+        Form form = this.lookupIndexes().formsById.get(feedbackFormId);
+        return form instanceof FeedbackForm ? (FeedbackForm) form : null;
     }
 
     public FeedbackForm getFeedbackFormByConnectCode(Integer connectCode) {
-        for (FeedbackForm feedbackForm : this.feedbackForms) {
-            if (feedbackForm.getConnectCode().equals(connectCode)) {
-                return feedbackForm;
-            }
-        }
-        return null;
+        Form form = this.getFormByConnectCode(connectCode);
+        return form instanceof FeedbackForm ? (FeedbackForm) form : null;
     }
 
     public FeedbackForm getFeedbackFormByKey(String key) {
-        for (FeedbackForm feedbackForm : this.feedbackForms) {
-            if (feedbackForm.getKey().equals(key)) {
-                return feedbackForm;
-            }
-        }
-        return null;
+        return this.lookupIndexes().feedbackFormsByKey.get(key);
     }
 
     public void addFeedbackForm(FeedbackForm feedbackForm) {
+        Indexes indexes = this.builtIndexes();
         this.feedbackForms.add(feedbackForm);
+        if (indexes != null) {
+            indexes.addFeedbackForm(feedbackForm);
+            indexes.update(this);
+        }
     }    
 
     public void removeFeedbackForm(FeedbackForm feedbackForm) {
         this.feedbackForms.remove(feedbackForm);
+        this.indexes = null;
     }    
 
     public void setFeedbackForms(List<FeedbackForm> feedbackForms) {
         this.feedbackForms = feedbackForms;
+        this.indexes = null;
     }    
 
     // feedbackQuestions
@@ -149,33 +166,30 @@ public class Course implements Serializable {
     }
 
     public FeedbackQuestion getFeedbackQuestionById(ObjectId feedbackQuestionId) {
-        for (FeedbackQuestion feedbackQuestion : this.feedbackQuestions) {
-            if (feedbackQuestion.getId().equals(feedbackQuestionId)) {
-                return feedbackQuestion;
-            }
-        }
-        return null;
+        return this.lookupIndexes().feedbackQuestionsById.get(feedbackQuestionId);
     }
 
     public FeedbackQuestion getFeedbackQuestionByKey(String key) {
-        for (FeedbackQuestion feedbackQuestion : this.feedbackQuestions) {
-            if (feedbackQuestion.getKey().equals(key)) {
-                return feedbackQuestion;
-            }
-        }
-        return null;
+        return this.lookupIndexes().feedbackQuestionsByKey.get(key);
     }
 
     public void setFeedbackQuestions(List<FeedbackQuestion> feedbackQuestions) {
         this.feedbackQuestions = feedbackQuestions;
+        this.indexes = null;
     }
 
     public void addFeedbackQuestion(FeedbackQuestion feedbackQuestion) {
+        Indexes indexes = this.builtIndexes();
         this.feedbackQuestions.add(feedbackQuestion);
+        if (indexes != null) {
+            indexes.addFeedbackQuestion(feedbackQuestion);
+            indexes.update(this);
+        }
     }
 
     public void removeFeedbackQuestion(FeedbackQuestion feedbackQuestion) {
         this.feedbackQuestions.remove(feedbackQuestion);
+        this.indexes = null;
     }
 
     // quiz
@@ -185,42 +199,36 @@ public class Course implements Serializable {
     }
 
     public QuizForm getQuizFormById(ObjectId quizFormId) {
-        for (QuizForm quizForm : this.quizForms) {
-            if (quizForm.getId().equals(quizFormId)) {
-                return quizForm;
-            }
-        }
-        return null;
+        Form form = this.lookupIndexes().formsById.get(quizFormId);
+        return form instanceof QuizForm ? (QuizForm) form : null;
     }
 
     public QuizForm getQuizFormByConnectCode(Integer connectCode) {
-        for (QuizForm quizForm : this.quizForms) {
-            if (quizForm.getConnectCode().equals(connectCode)) {
-                return quizForm;
-            }
-        }
-        return null;
+        Form form = this.getFormByConnectCode(connectCode);
+        return form instanceof QuizForm ? (QuizForm) form : null;
     }
 
     public QuizForm getQuizFormByKey(String key) {
-        for (QuizForm quizForm : this.quizForms) {
-            if (quizForm.getKey().equals(key)) {
-                return quizForm;
-            }
-        }
-        return null;
+        return this.lookupIndexes().quizFormsByKey.get(key);
     }
 
     public void addQuizForm(QuizForm quizForm) {
+        Indexes indexes = this.builtIndexes();
         this.quizForms.add(quizForm);
+        if (indexes != null) {
+            indexes.addQuizForm(quizForm);
+            indexes.update(this);
+        }
     }
 
     public void removeQuizForm(QuizForm quizForm) {
         this.quizForms.remove(quizForm);
+        this.indexes = null;
     }
 
     public void setQuizForms(List<QuizForm> quizForms) {
         this.quizForms = quizForms;
+        this.indexes = null;
     }
 
     // quizQuestions
@@ -229,64 +237,75 @@ public class Course implements Serializable {
     }
 
     public QuizQuestion getQuizQuestionById(ObjectId quizQuestionId) {
-        for (QuizQuestion quizQuestion : this.quizQuestions) {
-            if (quizQuestion.getId().equals(quizQuestionId)) {
-                return quizQuestion;
-            }
-        }
-        return null;
+        return this.lookupIndexes().quizQuestionsById.get(quizQuestionId);
     }
 
     public QuizQuestion getQuizQuestionByKey(String key) {
-        for (QuizQuestion quizQuestion : this.quizQuestions) {
-            if (quizQuestion.getKey().equals(key)) {
-                return quizQuestion;
-            }
-        }
-        return null;
+        return this.lookupIndexes().quizQuestionsByKey.get(key);
     }
 
     public void setQuizQuestions(List<QuizQuestion> quizQuestions) {
         this.quizQuestions = quizQuestions;
+        this.indexes = null;
     }
 
     public void addQuizQuestion(QuizQuestion quizQuestion) {
+        Indexes indexes = this.builtIndexes();
         this.quizQuestions.add(quizQuestion);
+        if (indexes != null) {
+            indexes.addQuizQuestion(quizQuestion);
+            indexes.update(this);
+        }
     }
 
     public void removeQuizQuestion(QuizQuestion quizQuestion) {
         this.quizQuestions.remove(quizQuestion);
+        this.indexes = null;
     }
 
     // general form
     public Form getFormById(ObjectId formId) {
-        List<Form> forms = new ArrayList<Form>();
-        forms.addAll(this.feedbackForms);
-        forms.addAll(this.quizForms);
-        for (Form form : forms) {
-            if (form.getId().equals(formId)) {
-                return form;
-            }
-        }
-        return null;
+        return this.lookupIndexes().formsById.get(formId);
     }
 
     public Form getFormByConnectCode(Integer connectCode) {
-        List<Form> forms = new ArrayList<Form>();
-        forms.addAll(this.feedbackForms);
-        forms.addAll(this.quizForms);
-        for (Form form : forms) {
-            if (form.getConnectCode().equals(connectCode)) {
-                return form;
-            }
+        Form form = this.lookupIndexes().formsByConnectCode.get(connectCode);
+        if (form != null && !connectCode.equals(form.getConnectCode())) {
+            // the connect code of the form was changed after indexing
+            this.indexes = null;
+            form = this.lookupIndexes().formsByConnectCode.get(connectCode);
+        }
+        return form;
+    }
+
+    // rebuilds the lookup indexes on the next lookup (needed after changing ids, keys or connect codes of contained objects)
+    public void clearIndexes() {
+        this.indexes = null;
+    }
+
+    // the indexes if they are already built and up to date (null otherwise)
+    private Indexes builtIndexes() {
+        Indexes indexes = this.indexes;
+        return indexes != null && indexes.isValidFor(this) ? indexes : null;
+    }
+
+    private Indexes lookupIndexes() {
+        Indexes indexes = this.indexes;
+        if (indexes == null || !indexes.isValidFor(this)) {
+            indexes = new Indexes(this);
+            this.indexes = indexes;
         }
-        return null;
+        return indexes;
     }
 
     public void setKey(String key) {
         this.key = key;
     }
 
+    public String getApiHash() {
+        return this.apiHash;
+    }
+
     public String getKey() {
         return this.key;
     }
@@ -310,6 +329,7 @@ public class Course implements Serializable {
         // create course
         Course course = new Course(apiCourse.getName(), apiCourse.getDescription());
         course.setKey(apiCourse.getKey());
+        course.apiHash = ContentHash.of(apiCourse);
 
         // create the feedback forms
         for (ApiFeedbackForm apiFeedbackForm : apiCourse.getFeedbackForms()) {
@@ -366,6 +386,112 @@ public class Course implements Serializable {
                 quizForm.updateFromApiQuizForm(apiQuizForm, this);
             }
         }
+
+        this.apiHash = ContentHash.of(apiCourse);
+    }
+
+    /*
+     * Hash indexes of the forms and questions (id, key and connect code to object).
+     * Remembers the lists (and their sizes) it was built from, so that lists replaced or
+     * changed directly (e.g. course.feedbackForms = ...) lead to a rebuild.
+     */
+    private static class Indexes {
+        final Map<ObjectId, Form> formsById = new HashMap<ObjectId, Form>();
+        final Map<Integer, Form> formsByConnectCode = new HashMap<Integer, Form>();
+        final Map<String, FeedbackForm> feedbackFormsByKey = new HashMap<String, FeedbackForm>();
+        final Map<String, QuizForm> quizFormsByKey = new HashMap<String, QuizForm>();
+        final Map<ObjectId, FeedbackQuestion> feedbackQuestionsById = new HashMap<ObjectId, FeedbackQuestion>();
+        final Map<String, FeedbackQuestion> feedbackQuestionsByKey = new HashMap<String, FeedbackQuestion>();
+        final Map<ObjectId, QuizQuestion> quizQuestionsById = new HashMap<ObjectId, QuizQuestion>();
+        final Map<String, QuizQuestion> quizQuestionsByKey = new HashMap<String, QuizQuestion>();
+
+        List<FeedbackForm> feedbackForms;
+        List<QuizForm> quizForms;
+        List<FeedbackQuestion> feedbackQuestions;
+        List<QuizQuestion> quizQuestions;
+        int feedbackFormsSize;
+        int quizFormsSize;
+        int feedbackQuestionsSize;
+        int quizQuestionsSize;
+
+        // on duplicates the first object wins (like the linear search did)
+        Indexes(Course course) {
+            if (course.feedbackForms != null) {
+                course.feedbackForms.forEach(this::addFeedbackForm);
+            }
+            if (course.quizForms != null) {
+                course.quizForms.forEach(this::addQuizForm);
+            }
+            if (course.feedbackQuestions != null) {
+                course.feedbackQuestions.forEach(this::addFeedbackQuestion);
+            }
+            if (course.quizQuestions != null) {
+                course.quizQuestions.forEach(this::addQuizQuestion);
+            }
+            this.update(course);
+        }
+
+        void addFeedbackForm(FeedbackForm feedbackForm) {
+            this.addForm(feedbackForm);
+            if (feedbackForm.getKey() != null) {
+                feedbackFormsByKey.putIfAbsent(feedbackForm.getKey(), feedbackForm);
+            }
+        }
+
+        void addQuizForm(QuizForm quizForm) {
+            this.addForm(quizForm);
+            if (quizForm.getKey() != null) {
+                quizFormsByKey.putIfAbsent(quizForm.getKey(), quizForm);
+            }
+        }
+
+        private void addForm(Form form) {
+            formsById.putIfAbsent(form.getId(), form);
+            if (form.getConnectCode() != null) {
+                formsByConnectCode.putIfAbsent(form.getConnectCode(), form);
+            }
+        }
+
+        void addFeedbackQuestion(FeedbackQuestion feedbackQuestion) {
+            feedbackQuestionsById.putIfAbsent(feedbackQuestion.getId(), feedbackQuestion);
+            if (feedbackQuestion.getKey() != null) {
+                feedbackQuestionsByKey.putIfAbsent(feedbackQuestion.getKey(), feedbackQuestion);
+            }
+        }
+
+        void addQuizQuestion(QuizQuestion quizQuestion) {
+            quizQuestionsById.putIfAbsent(quizQuestion.getId(), quizQuestion);
+            if (quizQuestion.getKey() != null) {
+                quizQuestionsByKey.putIfAbsent(quizQuestion.getKey(), quizQuestion);
+            }
+        }
+
+        void update(Course course) {
+            this.feedbackForms = course.feedbackForms;
+            this.quizForms = course.quizForms;
+            this.feedbackQuestions = course.feedbackQuestions;
+            this.quizQuestions = course.quizQuestions;
+            this.feedbackFormsSize = size(course.feedbackForms);
+            this.quizFormsSize = size(course.quizForms);
+            this.feedbackQuestionsSize = size(course.feedbackQuestions);
+            this.quizQuestionsSize = size(course.quizQuestions);
+        }
+
+        // checks if the indexes were built from the current lists
+        boolean isValidFor(Course course) {
+            return this.feedbackForms == course.feedbackForms
+                && this.quizForms == course.quizForms
+                && this.feedbackQuestions == course.feedbackQuestions
+                && this.quizQuestions == course.quizQuestions
+                && this.feedbackFormsSize == size(course.feedbackForms)
+                && this.quizFormsSize == size(course.quizForms)
+                && this.feedbackQuestionsSize == size(course.feedbackQuestions)
+                && this.quizQuestionsSize == size(course.quizQuestions);
+        }
+
+        private static int size(List<?> list) {
+            return list == null ? 0 : list.size();
+        }
     }
 
-}
\ No newline at end of file
+}
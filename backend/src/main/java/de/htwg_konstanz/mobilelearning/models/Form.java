@@ -1,7 +1,9 @@
 package de.htwg_konstanz.mobilelearning.models;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bson.types.ObjectId;
 
@@ -17,6 +19,9 @@ public abstract class Form {
     public Integer connectCode;
     public String key;
 
+    // content hash of the api form of the last sync
+    public String apiHash;
+
     public Form() {
     }
 
@@ -30,8 +35,8 @@ public abstract class Form {
 
         this.key = "";
 
-        // generate 6-digit connect code (100000 - 999999)
-        this.connectCode = (int) (Math.random() * 899999) + 100000;
+        // the 6-digit connect code is assigned by the ConnectCodeRepository when the course is stored
+        this.connectCode = null;
     }
 
     public ObjectId getId() {
@@ -85,6 +90,22 @@ public abstract class Form {
         }
     }
 
+    // fill the results (grouped by question wrapper id) loaded from the result buckets
+    public void fillResults(Map<ObjectId, List<Result>> results) {
+        for (QuestionWrapper element : this.questions) {
+            element.setResults(results.get(element.getId()));
+        }
+    }
+
+    // copies the question wrappers so that filling or clearing them does not touch this form
+    protected List<QuestionWrapper> copyQuestions() {
+        List<QuestionWrapper> copies = new ArrayList<QuestionWrapper>();
+        for (QuestionWrapper element : this.questions) {
+            copies.add(element.copy());
+        }
+        return copies;
+    }
+
     public void setKey(String key) {
         this.key = key;
     }
@@ -97,6 +118,26 @@ public abstract class Form {
         this.questions = questions;
     }
 
+    // replaces the question wrappers, the wrappers of questions that stay in the form are kept (with their id, so the results stay linked)
+    public void replaceQuestions(List<QuestionWrapper> questions) {
+        Map<ObjectId, QuestionWrapper> existing = new HashMap<ObjectId, QuestionWrapper>();
+        if (this.questions != null) {
+            for (QuestionWrapper element : this.questions) {
+                existing.putIfAbsent(element.getQuestionId(), element);
+            }
+        }
+        List<QuestionWrapper> replaced = new ArrayList<QuestionWrapper>();
+        for (QuestionWrapper element : questions) {
+            QuestionWrapper kept = existing.remove(element.getQuestionId());
+            replaced.add(kept != null ? kept : element);
+        }
+        this.questions = replaced;
+    }
+
+    public String getApiHash() {
+        return this.apiHash;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
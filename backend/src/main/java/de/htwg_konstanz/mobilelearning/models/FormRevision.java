@@ -0,0 +1,20 @@
+package de.htwg_konstanz.mobilelearning.models;
+
+import org.bson.types.ObjectId;
+
+// revision of the results and participants of a form (id = form id), shared by all instances for the owner view tags
+public class FormRevision {
+    public ObjectId id;
+    public Long revision;
+
+    public FormRevision() {
+    }
+
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public Long getRevision() {
+        return this.revision;
+    }
+}
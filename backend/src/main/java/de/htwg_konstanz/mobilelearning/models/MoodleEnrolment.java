@@ -0,0 +1,62 @@
+package de.htwg_konstanz.mobilelearning.models;
+
+import java.util.Date;
+import java.util.Objects;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.helper.MoodleCourse;
+
+// moodle course a user is enrolled in (synced in the background, see MoodleEnrolmentSync)
+public class MoodleEnrolment {
+    public ObjectId id;
+    public String username;
+    public Integer moodleUserId;
+    public Integer moodleCourseId;
+    public String fullname;
+    public String shortname;
+    public Boolean hidden;
+    public Integer startdate;
+    public Integer enddate;
+    public Date syncedAt;
+
+    public MoodleEnrolment() {
+    }
+
+    public MoodleEnrolment(String username, Integer moodleUserId, MoodleCourse course) {
+        this.id = new ObjectId();
+        this.username = username;
+        this.moodleUserId = moodleUserId;
+        this.moodleCourseId = course.id;
+        this.fullname = course.fullname;
+        this.shortname = course.shortname;
+        this.hidden = course.hidden;
+        this.startdate = course.startdate;
+        this.enddate = course.enddate;
+        this.syncedAt = new Date();
+    }
+
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    public Integer getMoodleCourseId() {
+        return this.moodleCourseId;
+    }
+
+    // true if the synced fields are equal (the sync time is ignored)
+    public Boolean sameAs(MoodleEnrolment other) {
+        return other != null
+            && Objects.equals(this.moodleUserId, other.moodleUserId)
+            && Objects.equals(this.moodleCourseId, other.moodleCourseId)
+            && Objects.equals(this.fullname, other.fullname)
+            && Objects.equals(this.shortname, other.shortname)
+            && Objects.equals(this.hidden, other.hidden)
+            && Objects.equals(this.startdate, other.startdate)
+            && Objects.equals(this.enddate, other.enddate);
+    }
+}
@@ -0,0 +1,31 @@
+package de.htwg_konstanz.mobilelearning.models;
+
+import java.util.Date;
+
+// user whose moodle enrolments are synced in the background (id = username), removed by a TTL index on activeUntil
+public class MoodleSyncUser {
+    public String id;
+    // moodle token of the last login (needed to fetch the courses without the password)
+    public String token;
+    public Integer moodleUserId;
+    public Date loggedInAt;
+    // extended by logins and JWT refreshes
+    public Date activeUntil;
+    // last sync by any instance
+    public Date syncedAt;
+
+    public MoodleSyncUser() {
+    }
+
+    public String getUsername() {
+        return this.id;
+    }
+
+    public String getToken() {
+        return this.token;
+    }
+
+    public Integer getMoodleUserId() {
+        return this.moodleUserId;
+    }
+}
@@ -13,6 +13,9 @@ public abstract class Question {
     public List<String> options;
     public String key;
 
+    // content hash of the api question of the last sync
+    public String apiHash;
+
     public Question() {
     }
 
@@ -3,6 +3,7 @@ package de.htwg_konstanz.mobilelearning.models;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.types.ObjectId;
 
 import de.htwg_konstanz.mobilelearning.helper.Analytics;
@@ -11,12 +12,16 @@ public class QuestionWrapper {
     
     public ObjectId id;
     public ObjectId questionId;
+
+    // results are stored in result buckets (see ResultRepository) and only filled for responses
+    @BsonIgnore
     public List<Result> results;
     public Analytics analytics;
 
     public Question questionContent;
 
     public QuestionWrapper() {
+        this.results = new ArrayList<Result>();
     }
 
     public QuestionWrapper(ObjectId questionId, List<Result> results) {
@@ -35,6 +40,14 @@ public class QuestionWrapper {
         this.results.clear();
     }
 
+    public void setResults(List<Result> results) {
+        this.results = results != null ? results : new ArrayList<Result>();
+    }
+
+    public List<Result> getResults() {
+        return this.results;
+    }
+
     public Boolean addResult(Result result) {
 
         if (result == null) {
@@ -67,4 +80,12 @@ public class QuestionWrapper {
     public ObjectId getQuestionId() {
         return questionId;
     }
+
+    public QuestionWrapper copy() {
+        QuestionWrapper copy = new QuestionWrapper(this.questionId, new ArrayList<Result>(this.results));
+        copy.id = this.id;
+        copy.analytics = this.analytics;
+        copy.questionContent = this.questionContent;
+        return copy;
+    }
 }
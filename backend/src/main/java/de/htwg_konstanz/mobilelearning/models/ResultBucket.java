@@ -0,0 +1,53 @@
+package de.htwg_konstanz.mobilelearning.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+// holds up to ResultRepository.BUCKET_SIZE results of one question wrapper of a form
+// (the results are not embedded in the course document anymore, so the course stays small)
+public class ResultBucket {
+    public ObjectId id;
+    public ObjectId courseId;
+    public ObjectId formId;
+    public ObjectId questionWrapperId;
+    public Integer count;
+    public List<Result> results;
+
+    public ResultBucket() {
+    }
+
+    public ResultBucket(ObjectId courseId, ObjectId formId, ObjectId questionWrapperId) {
+        this.id = new ObjectId();
+        this.courseId = courseId;
+        this.formId = formId;
+        this.questionWrapperId = questionWrapperId;
+        this.count = 0;
+        this.results = new ArrayList<Result>();
+    }
+
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public ObjectId getCourseId() {
+        return this.courseId;
+    }
+
+    public ObjectId getFormId() {
+        return this.formId;
+    }
+
+    public ObjectId getQuestionWrapperId() {
+        return this.questionWrapperId;
+    }
+
+    public Integer getCount() {
+        return this.count;
+    }
+
+    public List<Result> getResults() {
+        return this.results;
+    }
+}
@@ -0,0 +1,36 @@
+package de.htwg_konstanz.mobilelearning.models.auth;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+// refresh token of a user (only the hash of the token is stored), the claims of a new JWT are loaded from the user
+public class RefreshToken {
+    public ObjectId id;
+    public String tokenHash;
+    public ObjectId userId;
+    // hashes of the tokens replaced by rotation (using one of them again means the token was stolen)
+    public List<String> previousHashes;
+    public Date expiresAt;
+
+    public RefreshToken() {
+    }
+
+    public RefreshToken(String tokenHash, User user, Date expiresAt) {
+        this.id = new ObjectId();
+        this.tokenHash = tokenHash;
+        this.userId = user.getId();
+        this.previousHashes = new ArrayList<String>();
+        this.expiresAt = expiresAt;
+    }
+
+    public ObjectId getUserId() {
+        return this.userId;
+    }
+
+    public Date getExpiresAt() {
+        return this.expiresAt;
+    }
+}
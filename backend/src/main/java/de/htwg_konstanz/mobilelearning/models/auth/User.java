@@ -34,7 +34,6 @@ public class User {
         if (this.username.contains(": ")) {
             this.username = this.username.split(": ")[1];
         }
-        System.out.println("User constructed: " + this.toString());
     }
 
     public String getEmail() {
@@ -97,8 +96,7 @@ public class User {
 
     @Override
 	public String toString() {
-        return "User [id=" + this.id.toHexString() + ", email=" + this.email + ", name=" + this.name + ", username=" + this.username + ", password="
-                + this.password + ", roles=" + this.roles + "]";
+        return "User [id=" + this.id.toHexString() + ", email=" + this.email + ", name=" + this.name + ", username=" + this.username + ", roles=" + this.roles + "]";
 	}
 
     public boolean authenticate(String password) {
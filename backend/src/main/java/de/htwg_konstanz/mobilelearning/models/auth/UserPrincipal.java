@@ -0,0 +1,54 @@
+package de.htwg_konstanz.mobilelearning.models.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+// immutable copy of a user without the password (cached by the UserRepository, enough to sign a JWT)
+public final class UserPrincipal {
+    private final ObjectId id;
+    private final String username;
+    private final String name;
+    private final String email;
+    private final List<String> roles;
+
+    public UserPrincipal(User user) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.name = user.getName();
+        this.email = user.getEmail();
+        this.roles = user.getRoles() == null ? List.of() : List.copyOf(user.getRoles());
+    }
+
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getEmail() {
+        return this.email;
+    }
+
+    public List<String> getRoles() {
+        return this.roles;
+    }
+
+    // a detached user (e.g. for the JWT or ownership checks), changes are not written back
+    public User toUser() {
+        User user = new User();
+        user.id = this.id;
+        user.username = this.username;
+        user.name = this.name;
+        user.email = this.email;
+        user.roles = new ArrayList<String>(this.roles);
+        return user;
+    }
+}
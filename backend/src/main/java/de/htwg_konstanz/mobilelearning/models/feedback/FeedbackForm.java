@@ -7,6 +7,7 @@ import org.bson.types.ObjectId;
 
 import de.htwg_konstanz.mobilelearning.enums.FeedbackQuestionType;
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.helper.ContentHash;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.Form;
 import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
@@ -35,7 +36,7 @@ public class FeedbackForm extends Form {
     }
 
     public FeedbackForm copy() {
-        FeedbackForm copy = new FeedbackForm(this.courseId, this.name, this.description, this.questions, this.status);
+        FeedbackForm copy = new FeedbackForm(this.courseId, this.name, this.description, this.copyQuestions(), this.status);
         copy.id = new ObjectId(this.id.toHexString());
         copy.connectCode = this.connectCode;
         return copy;
@@ -90,6 +91,7 @@ public class FeedbackForm extends Form {
                 questionWrappers,
                 FormStatus.NOT_STARTED);
         feedbackForm.setKey(apiFeedbackForm.getKey());
+        feedbackForm.apiHash = ContentHash.of(apiFeedbackForm);
 
         return feedbackForm;
 
@@ -129,12 +131,16 @@ public class FeedbackForm extends Form {
 
             // check if the same question already exists (if so just add the id to the list
             // and continue)
+            String apiHash = ContentHash.of(apiFeedbackQuestion);
             FeedbackQuestion existingQuestion = course.getFeedbackQuestionByKey(apiFeedbackQuestion.getKey());
             if (existingQuestion != null) {
-                existingQuestion.setName(apiFeedbackQuestion.getName());
-                existingQuestion.setDescription(apiFeedbackQuestion.getDescription());
-                existingQuestion.setType(FeedbackQuestionType.valueOf(apiFeedbackQuestion.getType()));
-                existingQuestion.setOptions(apiFeedbackQuestion.getOptions());
+                if (!apiHash.equals(existingQuestion.apiHash)) {
+                    existingQuestion.setName(apiFeedbackQuestion.getName());
+                    existingQuestion.setDescription(apiFeedbackQuestion.getDescription());
+                    existingQuestion.setType(FeedbackQuestionType.valueOf(apiFeedbackQuestion.getType()));
+                    existingQuestion.setOptions(apiFeedbackQuestion.getOptions());
+                    existingQuestion.apiHash = apiHash;
+                }
                 feedbackQuestionIds.add(existingQuestion.getId());
                 continue;
             }
@@ -147,6 +153,7 @@ public class FeedbackForm extends Form {
                     apiFeedbackQuestion.getOptions(),
                     apiFeedbackQuestion.getKey()
                     );
+            feedbackQuestion.apiHash = apiHash;
 
             course.addFeedbackQuestion(feedbackQuestion);
             feedbackQuestionIds.add(feedbackQuestion.getId());
@@ -164,6 +171,12 @@ public class FeedbackForm extends Form {
     public void updateFromApiFeedbackForm(ApiFeedbackForm apiFeedbackForm, Course course)
             throws IllegalArgumentException {
 
+        // nothing changed since the last sync (the questions and their wrappers stay as they are)
+        String apiHash = ContentHash.of(apiFeedbackForm);
+        if (apiHash.equals(this.apiHash)) {
+            return;
+        }
+
         // validate input
         if (apiFeedbackForm.getName() == null || apiFeedbackForm.getName().isEmpty()) {
             throw new IllegalArgumentException("Feedback form name must not be empty.");
@@ -180,11 +193,12 @@ public class FeedbackForm extends Form {
         // update feedback questions
         List<QuestionWrapper> questionWrappers = FeedbackForm
                 .questionWrappersFromApiFeedbackFormQuestions(apiFeedbackForm.getQuestions(), course);
-        this.setQuestions(questionWrappers);
+        this.replaceQuestions(questionWrappers);
 
         // update feedback form
         this.setName(apiFeedbackForm.getName());
         this.setDescription(apiFeedbackForm.getDescription());
+        this.apiHash = apiHash;
 
     }
 }
\ No newline at end of file
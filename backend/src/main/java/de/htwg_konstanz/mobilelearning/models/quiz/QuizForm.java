@@ -4,10 +4,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.types.ObjectId;
 
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
 import de.htwg_konstanz.mobilelearning.enums.QuizQuestionType;
+import de.htwg_konstanz.mobilelearning.helper.ContentHash;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.Form;
 import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
@@ -18,9 +20,12 @@ public class QuizForm extends Form {
     public Integer currentQuestionIndex;
     public Boolean currentQuestionFinished;
 
+    // participants are stored in their own collection (see ParticipantRepository) and only filled for responses
+    @BsonIgnore
     public List<QuizParticipant> participants;
 
     public QuizForm() {
+        this.participants = new ArrayList<QuizParticipant>();
     }
 
     public QuizForm(
@@ -35,7 +40,7 @@ public class QuizForm extends Form {
         super(courseId, name, description, questions, status);
         this.currentQuestionIndex = currentQuestionIndex;
         this.currentQuestionFinished = currentQuestionFinished;
-        this.participants = List.of();
+        this.participants = new ArrayList<QuizParticipant>();
     }
 
     public void fillQuestionContents(Course course) {
@@ -55,13 +60,13 @@ public class QuizForm extends Form {
                 this.courseId,
                 this.name,
                 this.description,
-                this.questions,
+                this.copyQuestions(),
                 this.status,
                 this.currentQuestionIndex,
                 this.currentQuestionFinished);
         copy.id = new ObjectId(this.id.toHexString());
         copy.connectCode = this.connectCode;
-        copy.participants = this.participants;
+        copy.participants = this.participants != null ? new ArrayList<QuizParticipant>(this.participants) : new ArrayList<QuizParticipant>();
         return copy;
     }
 
@@ -83,43 +88,6 @@ public class QuizForm extends Form {
         return copy;
     }
 
-    public Boolean addParticipant(ObjectId userId, String userAlias) {
-        if (this.participants == null) {
-            this.participants = new java.util.ArrayList<QuizParticipant>();
-        }
-
-        // if alias is empty or already taken, return false
-        if (userAlias == null || userAlias.isEmpty()) {
-            return false;
-        }
-        for (QuizParticipant participant : this.participants) {
-            if (participant.userAlias.equals(userAlias)) {
-                return false;
-            }
-        }
-
-        // if user is already participating, just update the alias
-        for (QuizParticipant participant : this.participants) {
-            if (participant.getUserId().equals(userId)) {
-                participant.userAlias = userAlias;
-                return true;
-            }
-        }
-
-        // otherwise add a new participant
-        this.participants.add(new QuizParticipant(userId, userAlias));
-        return true;
-    }
-
-    public Integer increaseScoreOfParticipant(ObjectId userId, Integer by) {
-        for (QuizParticipant participant : this.participants) {
-            if (participant.getUserId().equals(userId)) {
-                return participant.increaseScore(by);
-            }
-        }
-        return null;
-    }
-
     public List<String> next() {
 
         if (this.status == FormStatus.NOT_STARTED) {
@@ -161,27 +129,23 @@ public class QuizForm extends Form {
     }
 
     public void clearParticipants() {
+        if (this.participants == null) {
+            this.participants = new ArrayList<QuizParticipant>();
+        }
         this.participants.clear();
     }
 
+    // fill the participants loaded from the participants collection
+    public void fillParticipants(List<QuizParticipant> participants) {
+        this.participants = participants != null ? new ArrayList<QuizParticipant>(participants) : new ArrayList<QuizParticipant>();
+    }
+
     public QuizForm copyWithoutResultsAndParticipantsButWithQuestionContents(Course byId) {
         QuizForm copy = this.copyWithoutResultsButWithQuestionContents(byId);
         copy.clearParticipants();
         return copy;
     }
 
-    public Boolean isParticipant(String userId) {
-        if (this.participants == null) {
-            return false;
-        }
-        for (QuizParticipant participant : this.participants) {
-            if (participant.getUserId().toHexString().equals(userId)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static QuizForm fromApiQuizForm(ApiQuizForm apiQuizForm, Course course) throws IllegalArgumentException {
 
         // validate input
@@ -215,6 +179,7 @@ public class QuizForm extends Form {
                 0,
                 false);
         quizForm.setKey(apiQuizForm.key);
+        quizForm.apiHash = ContentHash.of(apiQuizForm);
 
         return quizForm;
 
@@ -255,14 +220,18 @@ public class QuizForm extends Form {
 
             // check if the same question already exists (if so just add the id to the list
             // and continue)
+            String apiHash = ContentHash.of(apiQuizQuestion);
             QuizQuestion existingQuizQuestion = course.getQuizQuestionByKey(apiQuizQuestion.getKey());
             if (existingQuizQuestion != null) {
-                existingQuizQuestion.setName(apiQuizQuestion.getName());
-                existingQuizQuestion.setDescription(apiQuizQuestion.getDescription());
-                existingQuizQuestion.setType(QuizQuestionType.valueOf(apiQuizQuestion.getType()));
-                existingQuizQuestion.setOptions(apiQuizQuestion.getOptions());
-                existingQuizQuestion.setHasCorrectAnswers(apiQuizQuestion.getHasCorrectAnswers());
-                existingQuizQuestion.setCorrectAnswers(apiQuizQuestion.getCorrectAnswers());
+                if (!apiHash.equals(existingQuizQuestion.apiHash)) {
+                    existingQuizQuestion.setName(apiQuizQuestion.getName());
+                    existingQuizQuestion.setDescription(apiQuizQuestion.getDescription());
+                    existingQuizQuestion.setType(QuizQuestionType.valueOf(apiQuizQuestion.getType()));
+                    existingQuizQuestion.setOptions(apiQuizQuestion.getOptions());
+                    existingQuizQuestion.setHasCorrectAnswers(apiQuizQuestion.getHasCorrectAnswers());
+                    existingQuizQuestion.setCorrectAnswers(apiQuizQuestion.getCorrectAnswers());
+                    existingQuizQuestion.apiHash = apiHash;
+                }
                 quizQuestionIds.add(existingQuizQuestion.getId());
                 continue;
             }
@@ -277,6 +246,7 @@ public class QuizForm extends Form {
                     apiQuizQuestion.getCorrectAnswers(),
                     apiQuizQuestion.getKey()
                     );
+            quizQuestion.apiHash = apiHash;
 
             course.addQuizQuestion(quizQuestion);
             quizQuestionIds.add(quizQuestion.getId());
@@ -294,6 +264,12 @@ public class QuizForm extends Form {
 
     public void updateFromApiQuizForm(ApiQuizForm apiQuizForm, Course course) throws IllegalArgumentException {
 
+        // nothing changed since the last sync (the questions and their wrappers stay as they are)
+        String apiHash = ContentHash.of(apiQuizForm);
+        if (apiHash.equals(this.apiHash)) {
+            return;
+        }
+
         // validate input
         if (apiQuizForm.getName() == null || apiQuizForm.getName().isEmpty()) {
             throw new IllegalArgumentException("Quiz form name must not be empty.");
@@ -310,10 +286,11 @@ public class QuizForm extends Form {
         // update quiz questions
         List<QuestionWrapper> questionWrappers = QuizForm.questionWrappersFromApiQuizQuestions(apiQuizForm.getQuestions(),
                 course);
-        this.setQuestions(questionWrappers);
+        this.replaceQuestions(questionWrappers);
 
         // update quiz form
         this.setName(apiQuizForm.getName());
         this.setDescription(apiQuizForm.getDescription());
+        this.apiHash = apiHash;
     }
 }
@@ -4,6 +4,9 @@ import org.bson.types.ObjectId;
 
 public class QuizParticipant {
 
+    public ObjectId id;
+    public ObjectId courseId;
+    public ObjectId formId;
     public ObjectId userId;
     public String userAlias;
     public Integer score;
@@ -12,11 +15,24 @@ public class QuizParticipant {
     }
 
     public QuizParticipant(ObjectId userId, String userAlias) {
+        this.id = new ObjectId();
         this.userId = userId;
         this.userAlias = userAlias;
         this.score = 0;
     }
 
+    public ObjectId getId() {
+        return this.id;
+    }
+
+    public ObjectId getCourseId() {
+        return this.courseId;
+    }
+
+    public ObjectId getFormId() {
+        return this.formId;
+    }
+
     public String getUserAlias() {
         return this.userAlias;
     }
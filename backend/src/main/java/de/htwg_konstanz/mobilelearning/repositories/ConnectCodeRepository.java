@@ -0,0 +1,354 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+
+import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.enums.FormType;
+import de.htwg_konstanz.mobilelearning.models.ConnectCode;
+import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.Form;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.quarkus.scheduler.Scheduled.ConcurrentExecution;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/*
+ * Registry of the connect codes of all forms.
+ * Codes are allocated from a shuffled code space without collisions. Registered codes are kept in memory
+ * and resolved from there, the memory is reloaded every minute (other instances recycle and release codes too).
+ */
+@ApplicationScoped
+public class ConnectCodeRepository implements PanacheMongoRepository<ConnectCode> {
+
+    // 6-digit connect codes (100000 - 999999)
+    private static final int MIN_CODE = 100000;
+    private static final int CODE_SPACE = 900000;
+
+    // codes are handed out in the order of a keyed permutation of the code space (see codeAt),
+    // the key is a secret random seed stored with the cursor, so a code does not tell the next one
+    private static final String CURSOR_COLLECTION = "ConnectCodeCursor";
+    private static final int PERMUTATION_BITS = 20;
+    private static final int PERMUTATION_ROUNDS = 4;
+
+    private static final long RECYCLE_INTERVAL_MILLIS = 60 * 1000;
+
+    @ConfigProperty(name = "mobilelearning.connect-code.recycle-after-days", defaultValue = "7")
+    Integer recycleAfterDays;
+
+    @Inject
+    CourseRepository courseRepository;
+
+    private final Map<Integer, ConnectCode> codes = new ConcurrentHashMap<Integer, ConnectCode>();
+    private final Map<ObjectId, ConnectCode> codesByFormId = new ConcurrentHashMap<ObjectId, ConnectCode>();
+    private volatile long lastRecycle = 0;
+    private volatile Long seed;
+
+    void onStart(@Observes StartupEvent event) {
+        this.recycleFinishedCodes();
+        this.reload();
+        this.registerExistingForms();
+    }
+
+    // other instances register, recycle and release codes as well
+    @Scheduled(every = "1m", delayed = "1m", concurrentExecution = ConcurrentExecution.SKIP)
+    void refresh() {
+        this.recycleFinishedCodes();
+        this.reload();
+    }
+
+    /*
+     * Resolves a connect code to (type, courseId, formId), null if the code is not in use.
+     * Registered codes are served from memory, only unknown codes are looked up in mongo (registered
+     * by another instance in the meantime). Codes released or recycled by other instances are
+     * removed from memory by the refresh every minute.
+     */
+    public ConnectCode resolve(Integer code) {
+        if (code == null) {
+            return null;
+        }
+        ConnectCode cached = codes.get(code);
+        if (cached != null) {
+            return cached;
+        }
+        ConnectCode connectCode = find("code", code).firstResult();
+        this.cacheResolved(code, connectCode);
+        return connectCode;
+    }
+
+    /*
+     * Makes sure every form of the course has a registered connect code and keeps the finished
+     * state of the codes up to date. Returns the forms that got a new connect code.
+     */
+    public List<Form> assignCodes(Course course) {
+        List<Form> reassigned = new ArrayList<Form>();
+        if (course.getFeedbackForms() != null) {
+            course.getFeedbackForms().forEach(form -> {
+                if (this.assignCode(course.getId(), form, FormType.FEEDBACK)) {
+                    reassigned.add(form);
+                }
+            });
+        }
+        if (course.getQuizForms() != null) {
+            course.getQuizForms().forEach(form -> {
+                if (this.assignCode(course.getId(), form, FormType.QUIZ)) {
+                    reassigned.add(form);
+                }
+            });
+        }
+        if (!reassigned.isEmpty()) {
+            course.clearIndexes();
+        }
+        return reassigned;
+    }
+
+    private synchronized Boolean assignCode(ObjectId courseId, Form form, FormType type) {
+
+        // already registered: only keep the code of the form and the finished state in sync
+        ConnectCode registered = codesByFormId.get(form.getId());
+        if (registered != null) {
+            this.updateFinished(registered, form.getStatus() == FormStatus.FINISHED);
+            if (registered.getCode().equals(form.connectCode)) {
+                return false;
+            }
+            form.connectCode = registered.getCode();
+            return true;
+        }
+
+        // finished forms whose code was recycled stay without a registered code
+        // (registering it again would restart the recycle time on every write of the course)
+        if (form.getStatus() == FormStatus.FINISHED) {
+            return false;
+        }
+
+        // the form already has a code that is not in use (anymore): claim it so the code stays stable
+        if (form.connectCode != null && this.isInCodeSpace(form.connectCode) && this.resolve(form.connectCode) == null
+                && this.tryRegister(form.connectCode, type, courseId, form)) {
+            return false;
+        }
+
+        // otherwise allocate the next free code
+        form.connectCode = this.allocate(type, courseId, form);
+        return true;
+    }
+
+    private Integer allocate(FormType type, ObjectId courseId, Form form) {
+        this.recycleFinishedCodes();
+        for (int attempt = 0; attempt < CODE_SPACE; attempt++) {
+            Integer code = this.codeAt(this.nextCursor());
+            if (codes.containsKey(code)) {
+                continue;
+            }
+            if (this.tryRegister(code, type, courseId, form)) {
+                return code;
+            }
+        }
+        throw new IllegalStateException("No connect code available.");
+    }
+
+    private Boolean tryRegister(Integer code, FormType type, ObjectId courseId, Form form) {
+        ConnectCode connectCode = new ConnectCode(code, type, courseId, form.getId());
+        if (form.getStatus() == FormStatus.FINISHED) {
+            connectCode.setFinishedAt(new Date());
+        }
+        try {
+            persist(connectCode);
+        } catch (MongoWriteException e) {
+            // taken in the meantime (unique index on code)
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+        this.cache(connectCode);
+        return true;
+    }
+
+    private void updateFinished(ConnectCode connectCode, Boolean finished) {
+        if (finished && connectCode.getFinishedAt() == null) {
+            connectCode.setFinishedAt(new Date());
+            update(connectCode);
+        } else if (!finished && connectCode.getFinishedAt() != null) {
+            connectCode.setFinishedAt(null);
+            update(connectCode);
+        }
+    }
+
+    // removes the codes of forms that are finished for longer than the recycle time (at most once a minute)
+    private void recycleFinishedCodes() {
+        long now = System.currentTimeMillis();
+        if (now - lastRecycle < RECYCLE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastRecycle = now;
+
+        Date threshold = new Date(now - recycleAfterDays * 24L * 60 * 60 * 1000);
+        delete("finishedAt < ?1", threshold);
+        codes.values().removeIf(connectCode -> connectCode.getFinishedAt() != null && connectCode.getFinishedAt().before(threshold));
+        codesByFormId.values().removeIf(connectCode -> connectCode.getFinishedAt() != null && connectCode.getFinishedAt().before(threshold));
+    }
+
+    // removes all codes (e.g. when all courses are deleted)
+    public synchronized void clear() {
+        deleteAll();
+        codes.clear();
+        codesByFormId.clear();
+    }
+
+    // releases the codes of all forms of a deleted course
+    public synchronized void releaseCourse(ObjectId courseId) {
+        delete("courseId", courseId);
+        codes.values().removeIf(connectCode -> connectCode.getCourseId().equals(courseId));
+        codesByFormId.values().removeIf(connectCode -> connectCode.getCourseId().equals(courseId));
+    }
+
+    // releases the codes of forms that were removed from the course (after the course was written)
+    public synchronized void releaseRemovedForms(Course course) {
+        List<ObjectId> formIds = new ArrayList<ObjectId>();
+        if (course.getFeedbackForms() != null) {
+            course.getFeedbackForms().forEach(form -> formIds.add(form.getId()));
+        }
+        if (course.getQuizForms() != null) {
+            course.getQuizForms().forEach(form -> formIds.add(form.getId()));
+        }
+        long released = mongoCollection().deleteMany(Filters.and(
+            Filters.eq("courseId", course.getId()),
+            Filters.nin("formId", formIds)
+        )).getDeletedCount();
+        if (released > 0) {
+            codes.values().removeIf(connectCode -> connectCode.getCourseId().equals(course.getId()) && !formIds.contains(connectCode.getFormId()));
+            codesByFormId.values().removeIf(connectCode -> connectCode.getCourseId().equals(course.getId()) && !formIds.contains(connectCode.getFormId()));
+        }
+    }
+
+    private long nextCursor() {
+        // the seed is only set when the cursor is created (or by the first allocation after an update)
+        Document cursor = mongoDatabase().getCollection(CURSOR_COLLECTION).findOneAndUpdate(
+            Filters.eq("_id", "cursor"),
+            Updates.combine(Updates.inc("value", 1L), Updates.setOnInsert("seed", new SecureRandom().nextLong())),
+            new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+        );
+        if (cursor.getLong("seed") == null) {
+            mongoDatabase().getCollection(CURSOR_COLLECTION).updateOne(
+                Filters.and(Filters.eq("_id", "cursor"), Filters.exists("seed", false)),
+                Updates.set("seed", new SecureRandom().nextLong())
+            );
+            cursor = mongoDatabase().getCollection(CURSOR_COLLECTION).find(Filters.eq("_id", "cursor")).first();
+        }
+        this.seed = cursor.getLong("seed");
+        return cursor.getLong("value");
+    }
+
+    /*
+     * The code at the position of the cursor: a Feistel network keyed with the seed permutes the
+     * 20 bit numbers, values outside of the code space are permuted again until they fit (cycle walking).
+     * Unlike a fixed stride, the difference of two codes does not reveal the next one.
+     */
+    private Integer codeAt(long cursor) {
+        int value = (int) (cursor % CODE_SPACE);
+        do {
+            value = this.permute(value);
+        } while (value >= CODE_SPACE);
+        return MIN_CODE + value;
+    }
+
+    private int permute(int value) {
+        int halfBits = PERMUTATION_BITS / 2;
+        int mask = (1 << halfBits) - 1;
+        int left = (value >>> halfBits) & mask;
+        int right = value & mask;
+        for (int round = 0; round < PERMUTATION_ROUNDS; round++) {
+            int next = left ^ (int) (mix(this.seed ^ ((long) round << 32) ^ right) & mask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    // 64 bit mixing function (finalizer of SplitMix64)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private Boolean isInCodeSpace(Integer code) {
+        return code >= MIN_CODE && code < MIN_CODE + CODE_SPACE;
+    }
+
+    void cache(ConnectCode connectCode) {
+        codes.put(connectCode.getCode(), connectCode);
+        codesByFormId.put(connectCode.getFormId(), connectCode);
+    }
+
+    // keeps the memory in sync with a code read from mongo (null if the code is not in use anymore)
+    // the registered code from memory (null if unknown to this instance)
+    ConnectCode cached(Integer code) {
+        return codes.get(code);
+    }
+
+    void cacheResolved(Integer code, ConnectCode connectCode) {
+        if (connectCode != null) {
+            this.cache(connectCode);
+            return;
+        }
+        ConnectCode stale = codes.remove(code);
+        if (stale != null) {
+            codesByFormId.remove(stale.getFormId(), stale);
+        }
+    }
+
+    // replaces the codes in memory with the registered ones
+    private synchronized void reload() {
+        Map<Integer, ConnectCode> registered = new HashMap<Integer, ConnectCode>();
+        listAll().forEach(connectCode -> registered.put(connectCode.getCode(), connectCode));
+        codes.keySet().retainAll(registered.keySet());
+        codesByFormId.values().removeIf(connectCode -> {
+            ConnectCode current = registered.get(connectCode.getCode());
+            return current == null || !current.getFormId().equals(connectCode.getFormId());
+        });
+        registered.values().forEach(this::cache);
+    }
+
+    // registers the codes of forms stored before the registry existed (colliding codes are replaced)
+    private void registerExistingForms() {
+        List<Course> courses = courseRepository.mongoCollection().find().projection(Projections.include(
+            "feedbackForms._id", "feedbackForms.connectCode", "feedbackForms.status",
+            "quizForms._id", "quizForms.connectCode", "quizForms.status"
+        )).into(new ArrayList<Course>());
+
+        for (Course course : courses) {
+            for (Form form : this.assignCodes(course)) {
+                String forms = course.getFeedbackForms() != null && course.getFeedbackForms().contains(form) ? "feedbackForms" : "quizForms";
+                courseRepository.mongoCollection().updateOne(
+                    Filters.and(Filters.eq("_id", course.getId()), Filters.eq(forms + "._id", form.getId())),
+                    Updates.combine(
+                        Updates.set(forms + ".$.connectCode", form.getConnectCode()),
+                        Updates.inc("version", 1L)
+                    )
+                );
+                System.out.println("Assigned new connect code " + form.getConnectCode() + " to form " + form.getId().toHexString());
+            }
+        }
+    }
+}
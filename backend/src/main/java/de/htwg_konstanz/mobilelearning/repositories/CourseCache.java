@@ -0,0 +1,129 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import de.htwg_konstanz.mobilelearning.models.Course;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/*
+ * Read-through cache of decoded courses (keyed by course id, tagged with the course version).
+ * Bounded by the BSON size of the cached courses, eviction is W-TinyLFU (caffeine).
+ * The cached courses are shared and must not be modified.
+ */
+@ApplicationScoped
+public class CourseCache {
+
+    // a loaded course together with its version, BSON size and the time it took to decode it
+    public static class CachedCourse {
+        public final Course course;
+        public final Long version;
+        public final int bsonSize;
+        public final long decodeNanos;
+        volatile long checkedAt;
+
+        public CachedCourse(Course course, int bsonSize, long decodeNanos) {
+            this.course = course;
+            this.version = course.getVersion() == null ? 0L : course.getVersion();
+            this.bsonSize = bsonSize;
+            this.decodeNanos = decodeNanos;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    @ConfigProperty(name = "mobilelearning.course-cache.max-bytes", defaultValue = "67108864")
+    Long maxBytes;
+
+    // cached versions are compared with the database after this time (writes of other instances)
+    @ConfigProperty(name = "mobilelearning.course-cache.version-check-millis", defaultValue = "1000")
+    Long versionCheckMillis;
+
+    private Cache<ObjectId, CachedCourse> cache;
+    private final LongAdder decodeNanosSaved = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((ObjectId id, CachedCourse cachedCourse) -> cachedCourse.bsonSize)
+            .recordStats()
+            .build();
+    }
+
+    /*
+     * Returns the cached course or loads it with the loader (null if the course does not exist).
+     * The current version is fetched with versionLoader if the last check is older than versionCheckMillis.
+     */
+    public Course get(ObjectId courseId, Function<ObjectId, CachedCourse> loader, Function<ObjectId, Long> versionLoader) {
+
+        // check the version of the cached course (without counting it as a hit or miss)
+        CachedCourse peeked = cache.policy().getIfPresentQuietly(courseId);
+        if (peeked != null && System.currentTimeMillis() - peeked.checkedAt > versionCheckMillis) {
+            if (Objects.equals(peeked.version, versionLoader.apply(courseId))) {
+                peeked.checkedAt = System.currentTimeMillis();
+            } else {
+                cache.invalidate(courseId);
+                peeked = null;
+            }
+        }
+
+        CachedCourse cachedCourse = cache.get(courseId, loader);
+        if (cachedCourse == null) {
+            return null;
+        }
+        if (cachedCourse == peeked) {
+            decodeNanosSaved.add(cachedCourse.decodeNanos);
+        }
+        return cachedCourse.course;
+    }
+
+    // returns the cached course without loading it (null if not cached)
+    public Course getIfPresent(ObjectId courseId) {
+        CachedCourse cachedCourse = cache.getIfPresent(courseId);
+        if (cachedCourse == null || System.currentTimeMillis() - cachedCourse.checkedAt > versionCheckMillis) {
+            return null;
+        }
+        decodeNanosSaved.add(cachedCourse.decodeNanos);
+        return cachedCourse.course;
+    }
+
+    // adds a course loaded outside of get (e.g. by the ReactiveCourseRepository)
+    public void put(ObjectId courseId, CachedCourse cachedCourse) {
+        cache.put(courseId, cachedCourse);
+    }
+
+    public void invalidate(ObjectId courseId) {
+        if (courseId != null) {
+            cache.invalidate(courseId);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("entries", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("evictedBytes", stats.evictionWeight());
+        result.put("maxBytes", maxBytes);
+        result.put("decodeMillisSaved", decodeNanosSaved.sum() / 1_000_000);
+        return result;
+    }
+}
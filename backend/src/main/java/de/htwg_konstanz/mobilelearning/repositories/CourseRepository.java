@@ -1,42 +1,397 @@
 package de.htwg_konstanz.mobilelearning.repositories;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+import de.htwg_konstanz.mobilelearning.enums.FormType;
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache;
+import de.htwg_konstanz.mobilelearning.models.ConnectCode;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.Form;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
 import io.quarkus.mongodb.panache.PanacheMongoRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class CourseRepository implements PanacheMongoRepository<Course> {
 
+    // fields shown in the course list (no questions, results or participants)
+    private static final Bson SUMMARY_PROJECTION = Projections.include(
+        "name", "description", "owners", "key", "version",
+        "feedbackForms._id", "feedbackForms.courseId", "feedbackForms.name", "feedbackForms.description",
+        "feedbackForms.status", "feedbackForms.connectCode", "feedbackForms.key",
+        "quizForms._id", "quizForms.courseId", "quizForms.name", "quizForms.description",
+        "quizForms.status", "quizForms.connectCode", "quizForms.key",
+        "quizForms.currentQuestionIndex", "quizForms.currentQuestionFinished"
+    );
+
+    @Inject
+    ConnectCodeRepository connectCodeRepository;
+
+    @Inject
+    CourseCache courseCache;
+
+    @Inject
+    FormViewCache formViewCache;
+
+    @Inject
+    LiveFormRegistry liveFormRegistry;
+
+    // every stored form gets a registered (collision-free) connect code
+    // every write increases the version of the course, invalidates the cached course and updates the live forms
+    // updates only succeed if the stored version is still the loaded one (otherwise ConcurrentModificationException)
+    @Override
+    public void persist(Course course) {
+        connectCodeRepository.assignCodes(course);
+        this.increaseVersion(course);
+        PanacheMongoRepository.super.persist(course);
+        courseCache.invalidate(course.getId());
+        liveFormRegistry.update(course);
+        connectCodeRepository.releaseRemovedForms(course);
+    }
+
+    @Override
+    public void update(Course course) {
+        connectCodeRepository.assignCodes(course);
+        Long loadedVersion = course.getVersion();
+        this.increaseVersion(course);
+        if (mongoCollection().replaceOne(this.loadedVersionFilter(course.getId(), loadedVersion), course).getMatchedCount() == 0) {
+            course.setVersion(loadedVersion);
+            courseCache.invalidate(course.getId());
+            throw new ConcurrentModificationException("Course " + course.getId() + " was changed or deleted since it was loaded");
+        }
+        courseCache.invalidate(course.getId());
+        liveFormRegistry.update(course);
+        connectCodeRepository.releaseRemovedForms(course);
+    }
+
+    @Override
+    public void persistOrUpdate(Course course) {
+        connectCodeRepository.assignCodes(course);
+        Long loadedVersion = course.getVersion();
+        this.increaseVersion(course);
+        try {
+            // inserted if the course does not exist, a stored course with another version collides on _id
+            mongoCollection().replaceOne(this.loadedVersionFilter(course.getId(), loadedVersion), course, new ReplaceOptions().upsert(true));
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            course.setVersion(loadedVersion);
+            courseCache.invalidate(course.getId());
+            throw new ConcurrentModificationException("Course " + course.getId() + " was changed since it was loaded");
+        }
+        courseCache.invalidate(course.getId());
+        liveFormRegistry.update(course);
+        connectCodeRepository.releaseRemovedForms(course);
+    }
+
+    /*
+     * Writes the courses with one unordered bulk write. Courses with a stored state (encoded with encode when
+     * they were loaded) only get $set updates for the fields that changed, the others are inserted or replaced.
+     * Returns the errors of the courses the database rejected (e.g. duplicate keys) by course id.
+     * Like update, a course is only written if the stored version is still the loaded one.
+     */
+    public Map<ObjectId, String> persistOrUpdateAll(List<Course> courses, Map<ObjectId, BsonDocument> storedStates) {
+        Map<ObjectId, String> errors = new HashMap<ObjectId, String>();
+        List<Course> written = new ArrayList<Course>();
+        List<WriteModel<Course>> writes = new ArrayList<WriteModel<Course>>();
+        List<Course> updated = new ArrayList<Course>();
+        for (Course course : courses) {
+            connectCodeRepository.assignCodes(course);
+            BsonDocument stored = storedStates.get(course.getId());
+            Long loadedVersion = course.getVersion();
+            if (stored == null) {
+                // a stored course with another version collides on _id (reported as error)
+                this.increaseVersion(course);
+                writes.add(new ReplaceOneModel<Course>(this.loadedVersionFilter(course.getId(), loadedVersion), course, new ReplaceOptions().upsert(true)));
+                written.add(course);
+                continue;
+            }
+
+            List<Bson> arrayFilters = new ArrayList<Bson>();
+            List<Bson> updates = changedFields(stored, this.encode(course), arrayFilters);
+            if (updates.isEmpty()) {
+                continue;
+            }
+            this.increaseVersion(course);
+            updates.add(Updates.set("version", course.getVersion()));
+            writes.add(new UpdateOneModel<Course>(this.loadedVersionFilter(course.getId(), loadedVersion), Updates.combine(updates), new UpdateOptions().arrayFilters(arrayFilters.isEmpty() ? null : arrayFilters)));
+            written.add(course);
+            updated.add(course);
+        }
+        if (writes.isEmpty()) {
+            return errors;
+        }
+
+        long matched;
+        try {
+            matched = mongoCollection().bulkWrite(writes, new BulkWriteOptions().ordered(false)).getMatchedCount();
+        } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> errors.put(written.get(error.getIndex()).getId(), error.getMessage()));
+            matched = e.getWriteResult().getMatchedCount();
+        }
+
+        // updates of courses changed in the meantime match nothing (the bulk result only has the counts)
+        if (matched < updated.size() - updated.stream().filter(course -> errors.containsKey(course.getId())).count()) {
+            Map<ObjectId, Long> storedVersions = new HashMap<ObjectId, Long>();
+            mongoCollection().withDocumentClass(Document.class)
+                .find(Filters.in("_id", updated.stream().map(Course::getId).toList()))
+                .projection(Projections.include("version"))
+                .forEach(document -> storedVersions.put(document.getObjectId("_id"), document.getLong("version")));
+            for (Course course : updated) {
+                if (!errors.containsKey(course.getId()) && !course.getVersion().equals(storedVersions.get(course.getId()))) {
+                    errors.put(course.getId(), "Course was changed or deleted since it was loaded");
+                }
+            }
+        }
+
+        for (Course course : written) {
+            courseCache.invalidate(course.getId());
+            if (!errors.containsKey(course.getId())) {
+                liveFormRegistry.update(course);
+                connectCodeRepository.releaseRemovedForms(course);
+            }
+        }
+        return errors;
+    }
+
+    // the course as it is stored (to find the changed fields when writing it with persistOrUpdateAll)
+    public BsonDocument encode(Course course) {
+        BsonDocument document = new BsonDocument();
+        mongoCollection().getCodecRegistry().get(Course.class)
+            .encode(new BsonDocumentWriter(document), course, EncoderContext.builder().isEncodingCollectibleDocument(true).build());
+        return document;
+    }
+
+    /*
+     * Updates that turn the stored document into the current one (empty if nothing changed).
+     * Arrays of objects that keep the ids of their elements (e.g. forms) are updated element by element.
+     */
+    private static List<Bson> changedFields(BsonDocument stored, BsonDocument current, List<Bson> arrayFilters) {
+        List<Bson> updates = new ArrayList<Bson>();
+        for (String field : current.keySet()) {
+            BsonValue before = stored.get(field);
+            BsonValue after = current.get(field);
+            if (after.equals(before)) {
+                continue;
+            }
+            if (before != null && sameElementIds(before, after)) {
+                BsonArray beforeElements = before.asArray();
+                BsonArray afterElements = after.asArray();
+                for (int i = 0; i < afterElements.size(); i++) {
+                    if (!afterElements.get(i).equals(beforeElements.get(i))) {
+                        String identifier = "e" + arrayFilters.size();
+                        updates.add(Updates.set(field + ".$[" + identifier + "]", afterElements.get(i)));
+                        arrayFilters.add(Filters.eq(identifier + "._id", afterElements.get(i).asDocument().get("_id")));
+                    }
+                }
+            } else {
+                updates.add(Updates.set(field, after));
+            }
+        }
+        for (String field : stored.keySet()) {
+            if (!current.containsKey(field)) {
+                updates.add(Updates.unset(field));
+            }
+        }
+        return updates;
+    }
+
+    // true if both values are arrays of documents with the same ids in the same order
+    private static Boolean sameElementIds(BsonValue before, BsonValue after) {
+        if (!before.isArray() || !after.isArray() || before.asArray().size() != after.asArray().size()) {
+            return false;
+        }
+        for (int i = 0; i < after.asArray().size(); i++) {
+            BsonValue beforeElement = before.asArray().get(i);
+            BsonValue afterElement = after.asArray().get(i);
+            if (!beforeElement.isDocument() || !afterElement.isDocument() || !afterElement.asDocument().containsKey("_id")
+                    || !afterElement.asDocument().get("_id").equals(beforeElement.asDocument().get("_id"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void delete(Course course) {
+        PanacheMongoRepository.super.delete(course);
+        courseCache.invalidate(course.getId());
+        liveFormRegistry.remove(course.getId());
+        connectCodeRepository.releaseCourse(course.getId());
+    }
+
+    @Override
+    public boolean deleteById(ObjectId id) {
+        boolean deleted = PanacheMongoRepository.super.deleteById(id);
+        courseCache.invalidate(id);
+        liveFormRegistry.remove(id);
+        if (deleted) {
+            connectCodeRepository.releaseCourse(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public long deleteAll() {
+        long deleted = PanacheMongoRepository.super.deleteAll();
+        courseCache.invalidateAll();
+        formViewCache.invalidateAll();
+        liveFormRegistry.clear();
+        connectCodeRepository.clear();
+        return deleted;
+    }
+
+    private void increaseVersion(Course course) {
+        course.setVersion(course.getVersion() == null ? 1L : course.getVersion() + 1);
+    }
+
+    // the course as it was loaded (courses stored before versions existed have no version)
+    private Bson loadedVersionFilter(ObjectId id, Long loadedVersion) {
+        return Filters.and(Filters.eq("_id", id), Filters.eq("version", loadedVersion));
+    }
+
+    /*
+     * Loads the course through the course cache (decoded once, shared between requests).
+     * The returned course must not be modified, use findById to load a course for writing.
+     */
+    public Course findByIdReadOnly(ObjectId id) {
+        return courseCache.get(id, this::loadCachedCourse, this::findVersion);
+    }
+
+    private CourseCache.CachedCourse loadCachedCourse(ObjectId id) {
+        return this.decodeCachedCourse(mongoCollection().withDocumentClass(RawBsonDocument.class).find(Filters.eq("_id", id)).first());
+    }
+
+    // decodes a raw course for the course cache (null if there is no course)
+    CourseCache.CachedCourse decodeCachedCourse(RawBsonDocument raw) {
+        if (raw == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Course course = raw.decode(mongoCollection().getCodecRegistry().get(Course.class));
+        return new CourseCache.CachedCourse(course, raw.getByteBuffer().remaining(), System.nanoTime() - start);
+    }
+
+    // version of the course without loading it (null if the course does not exist, 0 if it was never versioned)
+    public Long findVersion(ObjectId id) {
+        Document course = mongoCollection().withDocumentClass(Document.class)
+            .find(Filters.eq("_id", id))
+            .projection(Projections.include("version"))
+            .first();
+        if (course == null) {
+            return null;
+        }
+        Long version = course.getLong("version");
+        return version == null ? 0L : version;
+    }
+
+
     public Course findByName(String name) {
         return find("name", name).firstResult();
     }
 
     public Course findByFeedbackFormConnectCode(Integer connectCode) {
-        return find("feedbackForms.connectCode", connectCode).firstResult();
+        return findByFormConnectCode(connectCode, FormType.FEEDBACK);
     }
 
     public Course findByQuizFormConnectCode(Integer connectCode) {
-        return find("quizForms.connectCode", connectCode).firstResult();
+        return findByFormConnectCode(connectCode, FormType.QUIZ);
     }
 
     public Course findByFormConnectCode(Integer connectCode) {
-        // TODO: make this more efficient
-        Course course = findByFeedbackFormConnectCode(connectCode);
-        if (course == null) {
-            course = findByQuizFormConnectCode(connectCode);
+        return findByFormConnectCode(connectCode, null);
+    }
+
+    private Course findByFormConnectCode(Integer connectCode, FormType type) {
+        ConnectCode resolved = connectCodeRepository.resolve(connectCode);
+        if (resolved == null || (type != null && resolved.getType() != type)) {
+            return null;
+        }
+        return findById(resolved.getCourseId());
+    }
+
+    /*
+     * Loads the course with only the given form and the questions referenced by it
+     * (filtered in mongo with $filter, so the read cost does not grow with the other forms of the course).
+     * The returned course is incomplete and must never be written back.
+     */
+    public Course findCourseWithForm(ObjectId courseId, ObjectId formId) {
+
+        // the complete course is already decoded
+        Course cached = courseCache.getIfPresent(courseId);
+        if (cached != null) {
+            return cached.getFormById(formId) == null ? null : cached;
         }
-        return course;
+
+        return mongoCollection().aggregate(courseWithFormPipeline(courseId, formId)).first();
+    }
+
+    // pipeline of findCourseWithForm (shared with the ReactiveCourseRepository)
+    static List<Bson> courseWithFormPipeline(ObjectId courseId, ObjectId formId) {
+        Document courseFields = new Document("name", 1)
+            .append("description", 1)
+            .append("owners", 1)
+            .append("key", 1)
+            .append("version", 1);
+
+        List<Bson> pipeline = List.of(
+            Aggregates.match(Filters.and(
+                Filters.eq("_id", courseId),
+                Filters.or(Filters.eq("feedbackForms._id", formId), Filters.eq("quizForms._id", formId))
+            )),
+            // keep only the requested form
+            Aggregates.project(new Document(courseFields)
+                .append("feedbackForms", filterById("$feedbackForms", formId))
+                .append("quizForms", filterById("$quizForms", formId))
+                .append("feedbackQuestions", 1)
+                .append("quizQuestions", 1)),
+            // keep only the questions referenced by the remaining form
+            Aggregates.project(new Document(courseFields)
+                .append("feedbackForms", 1)
+                .append("quizForms", 1)
+                .append("feedbackQuestions", filterReferencedQuestions("$feedbackQuestions", "$feedbackForms"))
+                .append("quizQuestions", filterReferencedQuestions("$quizQuestions", "$quizForms")))
+        );
+        return pipeline;
     }
 
     public Form findFormByIds(ObjectId courseId, ObjectId formId) {
-        Course course = findById(courseId);
+        Course course = findCourseWithForm(courseId, formId);
         if (course == null) {
             return null;
         }
@@ -44,33 +399,114 @@ public class CourseRepository implements PanacheMongoRepository<Course> {
     }
 
     public FeedbackForm findFeedbackFormByIds(ObjectId courseId, ObjectId formId) {
-        Course course = findById(courseId);
+        Course course = findCourseWithForm(courseId, formId);
         if (course == null) {
             return null;
         }
         return course.getFeedbackFormById(formId);
     }
 
-    public FeedbackForm findFeedbackFormByConnectCode(Integer connectionCode) {
-        Course course = findByFormConnectCode(connectionCode);
+    public QuizForm findQuizFormByIds(ObjectId courseId, ObjectId formId) {
+        Course course = findCourseWithForm(courseId, formId);
         if (course == null) {
             return null;
         }
+        return course.getQuizFormById(formId);
+    }
 
-        return course.getFeedbackFormByConnectCode(connectionCode);
+    public FeedbackForm findFeedbackFormByConnectCode(Integer connectionCode) {
+        ConnectCode resolved = connectCodeRepository.resolve(connectionCode);
+        if (resolved == null || resolved.getType() != FormType.FEEDBACK) {
+            return null;
+        }
+        return findFeedbackFormByIds(resolved.getCourseId(), resolved.getFormId());
     }
 
     public QuizForm findQuizFormByConnectCode(Integer connectionCode) {
-        Course course = findByFormConnectCode(connectionCode);
-        if (course == null) {
+        ConnectCode resolved = connectCodeRepository.resolve(connectionCode);
+        if (resolved == null || resolved.getType() != FormType.QUIZ) {
             return null;
         }
+        return findQuizFormByIds(resolved.getCourseId(), resolved.getFormId());
+    }
 
-        return course.getQuizFormByConnectCode(connectionCode);
+    // checks if the course has a quiz form with the given id (without loading the course)
+    public Boolean existsQuizForm(ObjectId courseId, ObjectId formId) {
+        return mongoCollection().countDocuments(Filters.and(
+            Filters.eq("_id", courseId),
+            Filters.eq("quizForms._id", formId)
+        )) > 0;
     }
 
     public Course findByKey(String key) {
         return find("key", key).firstResult();
     }
 
+    // all courses with one of the keys (one query)
+    public List<Course> findByKeys(Collection<String> keys) {
+        return mongoCollection().find(Filters.in("key", keys)).into(new ArrayList<Course>());
+    }
+
+    // id, key, owners and api hash of the courses with one of the keys (to skip unchanged courses of a sync)
+    public List<Course> findSyncStatesByKeys(Collection<String> keys) {
+        return mongoCollection().find(Filters.in("key", keys))
+            .projection(Projections.include("key", "owners", "apiHash"))
+            .into(new ArrayList<Course>());
+    }
+
+    /*
+     * Ids and versions of one page of the course list (ordered by id).
+     * namePrefix is optional, after is the last id of the previous page (null for the first page).
+     */
+    public Map<ObjectId, Long> findCourseListPage(String namePrefix, ObjectId after, int limit) {
+        Map<ObjectId, Long> versions = new LinkedHashMap<ObjectId, Long>();
+        mongoCollection().withDocumentClass(Document.class)
+            .find(courseListFilter(namePrefix, after, null))
+            .projection(Projections.include("_id", "version"))
+            .sort(Sorts.ascending("_id"))
+            .limit(limit)
+            .forEach(course -> versions.put(course.getObjectId("_id"), course.get("version", 0L)));
+        return versions;
+    }
+
+    // summaries of the courses of a page (from the id after "after" up to "until"), decoded one by one while iterating
+    public FindIterable<Course> findCourseSummaries(String namePrefix, ObjectId after, ObjectId until) {
+        return mongoCollection()
+            .find(courseListFilter(namePrefix, after, until))
+            .projection(SUMMARY_PROJECTION)
+            .sort(Sorts.ascending("_id"));
+    }
+
+    private static Bson courseListFilter(String namePrefix, ObjectId after, ObjectId until) {
+        List<Bson> filters = new ArrayList<Bson>();
+        if (namePrefix != null && !namePrefix.isEmpty()) {
+            // anchored prefix regex without special characters, so the name index can be used
+            filters.add(Filters.regex("name", "^" + namePrefix.replaceAll("[\\\\^$.|?*+()\\[\\]{}]", "\\\\$0")));
+        }
+        if (after != null) {
+            filters.add(Filters.gt("_id", after));
+        }
+        if (until != null) {
+            filters.add(Filters.lte("_id", until));
+        }
+        return filters.isEmpty() ? new Document() : Filters.and(filters);
+    }
+
+    private static Document filterById(String forms, ObjectId id) {
+        return new Document("$filter", new Document("input", new Document("$ifNull", List.of(forms, List.of())))
+            .append("as", "form")
+            .append("cond", new Document("$eq", List.of("$$form._id", id))));
+    }
+
+    private static Document filterReferencedQuestions(String questions, String forms) {
+        // all question ids of the question wrappers of the forms
+        Document referencedIds = new Document("$reduce", new Document("input", forms + ".questions.questionId")
+            .append("initialValue", List.of())
+            .append("in", new Document("$concatArrays", List.of("$$value", "$$this"))));
+
+        return new Document("$filter", new Document("input", new Document("$ifNull", List.of(questions, List.of())))
+            .append("as", "question")
+            .append("cond", new Document("$in", List.of("$$question._id", referencedIds))));
+    }
+
 }
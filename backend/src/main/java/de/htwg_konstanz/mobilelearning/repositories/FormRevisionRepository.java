@@ -0,0 +1,28 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+import de.htwg_konstanz.mobilelearning.models.FormRevision;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/*
+ * Revisions of the results and participants of the forms (see FormViewCache).
+ * Stored in mongo, so results written by one instance change the owner view tags of all instances.
+ */
+@ApplicationScoped
+public class FormRevisionRepository implements PanacheMongoRepository<FormRevision> {
+
+    public void increase(ObjectId formId) {
+        mongoCollection().updateOne(Filters.eq("_id", formId), Updates.inc("revision", 1L), new UpdateOptions().upsert(true));
+    }
+
+    // e.g. after all results were deleted
+    public void increaseAll() {
+        mongoCollection().updateMany(Filters.empty(), Updates.inc("revision", 1L));
+    }
+}
@@ -0,0 +1,265 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/*
+ * Declares all indexes the repositories rely on and reconciles them with the database at startup:
+ * missing indexes are created, indexes with a changed definition are replaced (the new one is built
+ * first, under another name if the name is still taken, then the outdated one is dropped).
+ */
+@ApplicationScoped
+public class IndexProvisioner {
+
+    // error codes of createIndexes if an index on the same keys exists with other options
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+    private static final int INDEX_KEY_SPECS_CONFLICT = 86;
+
+    @Inject
+    CourseRepository courseRepository;
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    ResultRepository resultRepository;
+
+    @Inject
+    ParticipantRepository participantRepository;
+
+    @Inject
+    ConnectCodeRepository connectCodeRepository;
+
+    @Inject
+    MoodleEnrolmentRepository moodleEnrolmentRepository;
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Inject
+    MoodleSyncUserRepository moodleSyncUserRepository;
+
+    void onStart(@Observes StartupEvent event) {
+        this.provisionIndexes();
+    }
+
+    // all indexes required by the queries of the repositories (by collection)
+    public Map<MongoCollection<Document>, List<IndexModel>> requiredIndexes() {
+        Map<MongoCollection<Document>, List<IndexModel>> indexes = new LinkedHashMap<MongoCollection<Document>, List<IndexModel>>();
+
+        indexes.put(courseRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            // name lookups and the course list filtered by name (paginated by _id)
+            new IndexModel(Indexes.ascending("name", "_id"), new IndexOptions().name("name_id")),
+            // courses created without the api have an empty key, so only non-empty keys have to be unique
+            new IndexModel(Indexes.ascending("key"), new IndexOptions().name("key_unique").unique(true)
+                .partialFilterExpression(Filters.gt("key", ""))),
+            // live forms (rebuilt at startup)
+            new IndexModel(Indexes.ascending("feedbackForms.status"), new IndexOptions().name("feedbackForms_status")),
+            new IndexModel(Indexes.ascending("quizForms.status"), new IndexOptions().name("quizForms_status"))
+        ));
+
+        indexes.put(userRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("username"), new IndexOptions().name("username_unique").unique(true))
+        ));
+
+        indexes.put(resultRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("formId", "questionWrapperId", "count"), new IndexOptions().name("formId_questionWrapperId_count")),
+            new IndexModel(Indexes.ascending("courseId"), new IndexOptions().name("courseId"))
+        ));
+
+        // submissions are unique by _id (form, question wrapper, user), these are for the deletes
+        indexes.put(resultRepository.submissionCollection(), List.of(
+            new IndexModel(Indexes.ascending("formId"), new IndexOptions().name("formId")),
+            new IndexModel(Indexes.ascending("courseId"), new IndexOptions().name("courseId"))
+        ));
+
+        indexes.put(participantRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("formId", "userId"), new IndexOptions().name(ParticipantRepository.USER_INDEX).unique(true)),
+            new IndexModel(Indexes.ascending("formId", "userAlias"), new IndexOptions().name(ParticipantRepository.ALIAS_INDEX).unique(true))
+        ));
+
+        indexes.put(connectCodeRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("code"), new IndexOptions().name("code_unique").unique(true)),
+            new IndexModel(Indexes.ascending("formId"), new IndexOptions().name("formId")),
+            // released codes of deleted courses and removed forms
+            new IndexModel(Indexes.ascending("courseId", "formId"), new IndexOptions().name("courseId_formId")),
+            new IndexModel(Indexes.ascending("finishedAt"), new IndexOptions().name("finishedAt").sparse(true))
+        ));
+
+        indexes.put(moodleEnrolmentRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("username", "moodleCourseId"), new IndexOptions().name("username_moodleCourseId_unique").unique(true))
+        ));
+
+        indexes.put(moodleSyncUserRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("loggedInAt"), new IndexOptions().name("loggedInAt")),
+            // inactive users (and their moodle tokens) are removed by mongo
+            new IndexModel(Indexes.ascending("activeUntil"), new IndexOptions().name("activeUntil_ttl").expireAfter(0L, TimeUnit.SECONDS))
+        ));
+
+        indexes.put(refreshTokenRepository.mongoCollection().withDocumentClass(Document.class), List.of(
+            new IndexModel(Indexes.ascending("tokenHash"), new IndexOptions().name("tokenHash_unique").unique(true)),
+            new IndexModel(Indexes.ascending("previousHashes"), new IndexOptions().name("previousHashes")),
+            new IndexModel(Indexes.ascending("userId"), new IndexOptions().name("userId")),
+            // expired tokens are removed by mongo
+            new IndexModel(Indexes.ascending("expiresAt"), new IndexOptions().name("expiresAt_ttl").expireAfter(0L, TimeUnit.SECONDS))
+        ));
+
+        return indexes;
+    }
+
+    public void provisionIndexes() {
+        this.requiredIndexes().forEach((collection, indexModels) -> {
+            String collectionName = collection.getNamespace().getCollectionName();
+
+            // existing indexes by name
+            Map<String, Document> existingIndexes = new LinkedHashMap<String, Document>();
+            for (Document existingIndex : collection.listIndexes()) {
+                existingIndexes.put(existingIndex.getString("name"), existingIndex);
+            }
+
+            for (IndexModel indexModel : indexModels) {
+                String name = indexModel.getOptions().getName();
+
+                // an index on the same keys may exist with another name (e.g. created before it was declared here,
+                // or by an earlier change of its options)
+                Document existingIndex = existingIndexes.get(name);
+                for (Document index : existingIndexes.values()) {
+                    if (!index.getString("name").equals("_id_") && this.sameKeys(collection, indexModel, index)
+                        && (existingIndex == null || this.matches(collection, indexModel, index))) {
+                        existingIndex = index;
+                    }
+                }
+                if (existingIndex != null && this.matches(collection, indexModel, existingIndex)) {
+                    continue;
+                }
+
+                try {
+                    // the new index is built before the outdated one is dropped, so the queries always have an index
+                    String newName = name;
+                    for (int version = 2; existingIndexes.containsKey(newName); version++) {
+                        newName = name + "_v" + version;
+                    }
+                    IndexModel newIndexModel = new IndexModel(indexModel.getKeys(), indexModel.getOptions().name(newName));
+                    try {
+                        collection.createIndexes(List.of(newIndexModel));
+                    } catch (MongoCommandException e) {
+                        // mongo does not allow some indexes on the same keys at the same time (e.g. unique and not unique)
+                        if (existingIndex == null || (e.getErrorCode() != INDEX_OPTIONS_CONFLICT && e.getErrorCode() != INDEX_KEY_SPECS_CONFLICT)) {
+                            throw e;
+                        }
+                        this.drop(collection, existingIndex);
+                        existingIndex = null;
+                        collection.createIndexes(List.of(newIndexModel));
+                    }
+                    System.out.println("Created index " + collectionName + "." + newName);
+                    if (existingIndex != null) {
+                        this.drop(collection, existingIndex);
+                    }
+                } catch (Exception e) {
+                    // e.g. a unique index can not be built because of existing duplicates
+                    System.out.println("Unable to create index " + collectionName + "." + name + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void drop(MongoCollection<Document> collection, Document index) {
+        collection.dropIndex(index.getString("name"));
+        System.out.println("Dropped outdated index " + collection.getNamespace().getCollectionName() + "." + index.getString("name"));
+    }
+
+    // usage stats ($indexStats) of all indexes of the collections used by the repositories
+    public List<Map<String, Object>> getIndexStats() {
+        List<Map<String, Object>> stats = new ArrayList<Map<String, Object>>();
+        for (MongoCollection<Document> collection : this.requiredIndexes().keySet()) {
+            String collectionName = collection.getNamespace().getCollectionName();
+            for (Document indexStats : collection.aggregate(List.of(new Document("$indexStats", new Document())))) {
+                Document accesses = indexStats.get("accesses", Document.class);
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                entry.put("collection", collectionName);
+                entry.put("name", indexStats.getString("name"));
+                entry.put("key", indexStats.get("key", Document.class));
+                entry.put("ops", accesses != null ? accesses.get("ops") : null);
+                entry.put("since", accesses != null ? accesses.get("since") : null);
+                stats.add(entry);
+            }
+        }
+        return stats;
+    }
+
+    // same keys and options (the name does not matter)
+    private Boolean matches(MongoCollection<Document> collection, IndexModel indexModel, Document existingIndex) {
+        if (!this.sameKeys(collection, indexModel, existingIndex)) {
+            return false;
+        }
+        IndexOptions options = indexModel.getOptions();
+
+        if (options.isUnique() != existingIndex.getBoolean("unique", false)) {
+            return false;
+        }
+        if (options.isSparse() != existingIndex.getBoolean("sparse", false)) {
+            return false;
+        }
+
+        // the filters have to be the same, not only both present
+        BsonDocument requiredPartial = options.getPartialFilterExpression() == null ? null
+            : options.getPartialFilterExpression().toBsonDocument(Document.class, collection.getCodecRegistry());
+        Document existingPartialDocument = existingIndex.get("partialFilterExpression", Document.class);
+        BsonDocument existingPartial = existingPartialDocument == null ? null
+            : existingPartialDocument.toBsonDocument(Document.class, collection.getCodecRegistry());
+        if (requiredPartial == null ? existingPartial != null : !requiredPartial.equals(existingPartial)) {
+            return false;
+        }
+
+        // TTL indexes (expireAfterSeconds may be stored as int, long or double)
+        Long requiredExpireAfter = options.getExpireAfter(TimeUnit.SECONDS);
+        Object existingExpireAfter = existingIndex.get("expireAfterSeconds");
+        if (requiredExpireAfter == null || existingExpireAfter == null) {
+            return requiredExpireAfter == null && existingExpireAfter == null;
+        }
+        return existingExpireAfter instanceof Number && requiredExpireAfter == ((Number) existingExpireAfter).longValue();
+    }
+
+    private Boolean sameKeys(MongoCollection<Document> collection, IndexModel indexModel, Document existingIndex) {
+        BsonDocument requiredKeys = indexModel.getKeys().toBsonDocument(Document.class, collection.getCodecRegistry());
+        BsonDocument existingKeys = existingIndex.get("key", Document.class).toBsonDocument(Document.class, collection.getCodecRegistry());
+
+        // compare the key fields in order (directions may be stored as int or double)
+        List<String> requiredFields = new ArrayList<String>(requiredKeys.keySet());
+        List<String> existingFields = new ArrayList<String>(existingKeys.keySet());
+        if (!requiredFields.equals(existingFields)) {
+            return false;
+        }
+        for (String field : requiredFields) {
+            BsonValue required = requiredKeys.get(field);
+            BsonValue existing = existingKeys.get(field);
+            if (required.isNumber() && existing.isNumber()) {
+                if (required.asNumber().intValue() != existing.asNumber().intValue()) {
+                    return false;
+                }
+            } else if (!required.equals(existing)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+
+import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.Form;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/*
+ * Registry of the started (live) forms by course.
+ * Updated by the CourseRepository on every write, so it follows status changes of the sockets and the REST services.
+ */
+@ApplicationScoped
+public class LiveFormRegistry {
+
+    @Inject
+    CourseRepository courseRepository;
+
+    // courseId -> copies (without results) of the started forms of the course
+    private final Map<ObjectId, List<Form>> liveForms = new ConcurrentHashMap<ObjectId, List<Form>>();
+
+    // rebuilt with one query on the (indexed) form status
+    void onStart(@Observes StartupEvent event) {
+        liveForms.clear();
+        courseRepository.mongoCollection().find(Filters.or(
+            Filters.eq("feedbackForms.status", FormStatus.STARTED.name()),
+            Filters.eq("quizForms.status", FormStatus.STARTED.name())
+        )).forEach(this::update);
+        System.out.println("Live forms: " + liveForms.values().stream().mapToInt(List::size).sum());
+    }
+
+    // takes over the live forms of the stored course
+    public void update(Course course) {
+        List<Form> forms = new ArrayList<Form>();
+        if (course.getFeedbackForms() != null) {
+            course.getFeedbackForms().stream()
+                .filter(form -> form.getStatus() == FormStatus.STARTED)
+                .forEach(form -> forms.add(form.copyWithoutResults()));
+        }
+        if (course.getQuizForms() != null) {
+            course.getQuizForms().stream()
+                .filter(form -> form.getStatus() == FormStatus.STARTED)
+                .forEach(form -> forms.add(form.copyWithoutResults()));
+        }
+
+        if (forms.isEmpty()) {
+            liveForms.remove(course.getId());
+        } else {
+            liveForms.put(course.getId(), List.copyOf(forms));
+        }
+    }
+
+    public void remove(ObjectId courseId) {
+        liveForms.remove(courseId);
+    }
+
+    public void clear() {
+        liveForms.clear();
+    }
+
+    public List<Form> getLiveForms() {
+        List<Form> forms = new ArrayList<Form>();
+        liveForms.values().forEach(forms::addAll);
+        return forms;
+    }
+
+    public List<Form> getLiveForms(ObjectId courseId) {
+        return liveForms.getOrDefault(courseId, List.of());
+    }
+}
@@ -0,0 +1,64 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+
+import de.htwg_konstanz.mobilelearning.helper.MoodleCourse;
+import de.htwg_konstanz.mobilelearning.models.MoodleEnrolment;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class MoodleEnrolmentRepository implements PanacheMongoRepository<MoodleEnrolment> {
+
+    public List<MoodleEnrolment> findByUsername(String username) {
+        return list("username", username);
+    }
+
+    /*
+     * Stores the enrolled courses of the user: only new or changed enrolments are written and
+     * enrolments of courses the user is not enrolled in anymore are removed (one bulk write).
+     * Returns the number of written and removed enrolments.
+     */
+    public int sync(String username, Integer moodleUserId, List<MoodleCourse> courses) {
+        Map<Integer, MoodleEnrolment> stored = new HashMap<Integer, MoodleEnrolment>();
+        this.findByUsername(username).forEach(enrolment -> stored.put(enrolment.getMoodleCourseId(), enrolment));
+
+        List<WriteModel<MoodleEnrolment>> writes = new ArrayList<WriteModel<MoodleEnrolment>>();
+        for (MoodleCourse course : courses) {
+            MoodleEnrolment enrolment = new MoodleEnrolment(username, moodleUserId, course);
+            MoodleEnrolment storedEnrolment = stored.remove(course.id);
+            if (enrolment.sameAs(storedEnrolment)) {
+                continue;
+            }
+            if (storedEnrolment != null) {
+                enrolment.id = storedEnrolment.getId();
+            }
+            writes.add(new ReplaceOneModel<MoodleEnrolment>(Filters.eq("_id", enrolment.getId()), enrolment, new ReplaceOptions().upsert(true)));
+        }
+
+        // not enrolled anymore
+        int changes = writes.size() + stored.size();
+        if (!stored.isEmpty()) {
+            List<ObjectId> removed = new ArrayList<ObjectId>();
+            stored.values().forEach(enrolment -> removed.add(enrolment.getId()));
+            writes.add(new DeleteManyModel<MoodleEnrolment>(Filters.in("_id", removed)));
+        }
+
+        if (!writes.isEmpty()) {
+            mongoCollection().bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,59 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+import de.htwg_konstanz.mobilelearning.models.MoodleSyncUser;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/*
+ * Users that are eligible for the moodle enrolment sync (see MoodleEnrolmentSync).
+ * Stored in mongo, so the sync survives restarts and is shared by all instances.
+ */
+@ApplicationScoped
+public class MoodleSyncUserRepository implements PanacheMongoRepository<MoodleSyncUser> {
+
+    // a login to moodle (new token)
+    public void login(String username, String token, Integer moodleUserId, Date activeUntil) {
+        mongoCollection().updateOne(
+            Filters.eq("_id", username),
+            Updates.combine(
+                Updates.set("token", token),
+                Updates.set("moodleUserId", moodleUserId),
+                Updates.set("loggedInAt", new Date()),
+                Updates.set("activeUntil", activeUntil)
+            ),
+            new UpdateOptions().upsert(true)
+        );
+    }
+
+    // the user is still using the app (e.g. renewed the JWT), only known users are extended
+    public void extend(String username, Date activeUntil) {
+        mongoCollection().updateOne(Filters.eq("_id", username), Updates.max("activeUntil", activeUntil));
+    }
+
+    // active users whose moodle token was issued after loggedInAfter
+    public List<MoodleSyncUser> findEligible(Date loggedInAfter) {
+        return mongoCollection().find(Filters.and(
+            Filters.gt("activeUntil", new Date()),
+            Filters.gt("loggedInAt", loggedInAfter)
+        )).into(new ArrayList<MoodleSyncUser>());
+    }
+
+    /*
+     * Claims the sync of the user for this run (one conditional update), false if another
+     * instance synced the user after syncedBefore.
+     */
+    public Boolean claim(String username, Date syncedBefore) {
+        return mongoCollection().updateOne(
+            Filters.and(Filters.eq("_id", username), Filters.or(Filters.exists("syncedAt", false), Filters.lt("syncedAt", syncedBefore))),
+            Updates.set("syncedAt", new Date())
+        ).getModifiedCount() > 0;
+    }
+}
@@ -0,0 +1,197 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache;
+import de.htwg_konstanz.mobilelearning.models.quiz.QuizParticipant;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+@ApplicationScoped
+public class ParticipantRepository implements PanacheMongoRepository<QuizParticipant> {
+
+    // names of the unique indexes (see IndexProvisioner)
+    public static final String USER_INDEX = "formId_userId_unique";
+    public static final String ALIAS_INDEX = "formId_userAlias_unique";
+
+    // cursors of the alias permutations by form id (see AliasAllocator)
+    private static final String ALIAS_CURSOR_COLLECTION = "AliasCursor";
+
+    @Inject
+    CourseRepository courseRepository;
+
+    @Inject
+    FormViewCache formViewCache;
+
+    void onStart(@Observes StartupEvent event) {
+        this.migrateEmbeddedParticipants();
+    }
+
+    /*
+     * Adds the user as participant of the quiz form or updates the alias if the user already joined.
+     * This is a single upsert, the unique index on (formId, userAlias) reports taken aliases.
+     * Returns false if the alias is empty or already taken by another participant.
+     */
+    public Boolean join(ObjectId courseId, ObjectId formId, ObjectId userId, String userAlias) {
+
+        if (userAlias == null || userAlias.isEmpty()) {
+            return false;
+        }
+
+        // retry once: two parallel first joins of the same user can collide on (formId, userId)
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                mongoCollection().updateOne(
+                    Filters.and(Filters.eq("formId", formId), Filters.eq("userId", userId)),
+                    Updates.combine(
+                        Updates.set("userAlias", userAlias),
+                        Updates.setOnInsert("courseId", courseId),
+                        Updates.setOnInsert("score", 0)
+                    ),
+                    new UpdateOptions().upsert(true)
+                );
+                formViewCache.resultsChanged(formId);
+                return true;
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                // the stored participants tell which index was violated (not the error message)
+                if (this.isAliasTaken(formId, userId, userAlias)) {
+                    return false;
+                }
+                if (attempt > 0 || !this.isParticipant(formId, userId)) {
+                    throw e;
+                }
+            }
+        }
+        throw new IllegalStateException("Unable to add participant " + userId.toHexString() + " to form " + formId.toHexString());
+    }
+
+    // the alias belongs to another participant of the form
+    private Boolean isAliasTaken(ObjectId formId, ObjectId userId, String userAlias) {
+        return mongoCollection().countDocuments(Filters.and(
+            Filters.eq("formId", formId),
+            Filters.eq("userAlias", userAlias),
+            Filters.ne("userId", userId)
+        )) > 0;
+    }
+
+    public Boolean isParticipant(ObjectId formId, ObjectId userId) {
+        return mongoCollection().countDocuments(Filters.and(
+            Filters.eq("formId", formId),
+            Filters.eq("userId", userId)
+        )) > 0;
+    }
+
+    // atomically increases the score and returns the new score (null if the user is no participant)
+    public Integer increaseScore(ObjectId formId, ObjectId userId, Integer by) {
+        QuizParticipant participant = mongoCollection().findOneAndUpdate(
+            Filters.and(Filters.eq("formId", formId), Filters.eq("userId", userId)),
+            Updates.inc("score", by),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+        );
+        formViewCache.resultsChanged(formId);
+        return participant != null ? participant.getScore() : null;
+    }
+
+    public List<QuizParticipant> findByFormId(ObjectId formId) {
+        return find("formId", formId).list();
+    }
+
+    /*
+     * Next position in the alias permutation of the form. The cursor is stored, so aliases handed out
+     * without a join (e.g. /funnyalias) are not handed out again after a restart or by another instance.
+     * A new cursor starts behind the participants that joined before the cursor existed.
+     */
+    public long nextAliasIndex(ObjectId formId) {
+        MongoCollection<Document> cursors = mongoDatabase().getCollection(ALIAS_CURSOR_COLLECTION);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER);
+        Document cursor = cursors.findOneAndUpdate(Filters.eq("_id", formId), Updates.inc("value", 1L), options);
+        if (cursor == null) {
+            cursors.updateOne(Filters.eq("_id", formId), Updates.setOnInsert("value", count("formId", formId)), new UpdateOptions().upsert(true));
+            cursor = cursors.findOneAndUpdate(Filters.eq("_id", formId), Updates.inc("value", 1L), options);
+        }
+        return cursor.getLong("value") - 1;
+    }
+
+    // moves the alias cursor of the form behind count aliases that were assigned without it (e.g. generated data)
+    public void reserveAliasIndexes(ObjectId formId, long count) {
+        mongoDatabase().getCollection(ALIAS_CURSOR_COLLECTION).updateOne(Filters.eq("_id", formId), Updates.max("value", count), new UpdateOptions().upsert(true));
+    }
+
+    public long deleteByFormId(ObjectId formId) {
+        mongoDatabase().getCollection(ALIAS_CURSOR_COLLECTION).deleteOne(Filters.eq("_id", formId));
+        long deleted = delete("formId", formId);
+        formViewCache.resultsChanged(formId);
+        return deleted;
+    }
+
+    /*
+     * Moves participants that are still embedded in the quiz forms of course documents
+     * (stored before the participants got their own collection) into this collection.
+     * Safe to run again after a crash: participants that were already moved are not changed
+     * (their score may have increased since).
+     */
+    void migrateEmbeddedParticipants() {
+        MongoCollection<Document> courses = courseRepository.mongoCollection().withDocumentClass(Document.class);
+        MongoCollection<Document> participants = mongoCollection().withDocumentClass(Document.class);
+
+        for (Document course : courses.find(Filters.exists("quizForms.participants.0"))) {
+            ObjectId courseId = course.getObjectId("_id");
+            List<Document> quizForms = course.getList("quizForms", Document.class, List.of());
+
+            for (Document quizForm : quizForms) {
+                for (Document participant : quizForm.getList("participants", Document.class, List.of())) {
+                    String userAlias = participant.getString("userAlias");
+                    ObjectId formId = quizForm.getObjectId("_id");
+                    try {
+                        this.migrateParticipant(participants, courseId, formId, participant, userAlias);
+                    } catch (MongoWriteException e) {
+                        if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY || !this.isAliasTaken(formId, participant.getObjectId("userId"), userAlias)) {
+                            throw e;
+                        }
+                        // the alias was taken meanwhile (e.g. by a join after an interrupted migration), the user id is appended
+                        this.migrateParticipant(participants, courseId, formId, participant,
+                            userAlias + " (" + participant.getObjectId("userId").toHexString() + ")");
+                    }
+                }
+                quizForm.remove("participants");
+            }
+
+            // write back the quiz forms without the embedded participants
+            courses.updateOne(Filters.eq("_id", courseId), Updates.set("quizForms", quizForms));
+            System.out.println("Moved embedded participants of course " + courseId.toHexString() + " into participants collection");
+        }
+    }
+
+    private void migrateParticipant(MongoCollection<Document> participants, ObjectId courseId, ObjectId formId, Document participant, String userAlias) {
+        participants.updateOne(
+            Filters.and(
+                Filters.eq("formId", formId),
+                Filters.eq("userId", participant.getObjectId("userId"))
+            ),
+            Updates.combine(
+                Updates.setOnInsert("userAlias", userAlias),
+                Updates.setOnInsert("score", participant.getInteger("score", 0)),
+                Updates.setOnInsert("courseId", courseId)
+            ),
+            new UpdateOptions().upsert(true)
+        );
+    }
+}
@@ -0,0 +1,27 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import de.htwg_konstanz.mobilelearning.models.ConnectCode;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+// non-blocking resolving of connect codes (codes are allocated by the ConnectCodeRepository)
+@ApplicationScoped
+public class ReactiveConnectCodeRepository implements ReactivePanacheMongoRepository<ConnectCode> {
+
+    @Inject
+    ConnectCodeRepository connectCodeRepository;
+
+    // see ConnectCodeRepository.resolve (memory first, mongo only for unknown codes)
+    public Uni<ConnectCode> resolve(Integer code) {
+        if (code == null) {
+            return Uni.createFrom().nullItem();
+        }
+        ConnectCode cached = connectCodeRepository.cached(code);
+        if (cached != null) {
+            return Uni.createFrom().item(cached);
+        }
+        return find("code", code).firstResult().invoke(found -> connectCodeRepository.cacheResolved(code, found));
+    }
+}
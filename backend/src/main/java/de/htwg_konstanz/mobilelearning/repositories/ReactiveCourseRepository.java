@@ -0,0 +1,71 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+
+import de.htwg_konstanz.mobilelearning.models.Course;
+import io.quarkus.mongodb.FindOptions;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/*
+ * Non-blocking variants of the read queries of the CourseRepository (for the REST endpoints).
+ * Writes stay in the CourseRepository (connect codes, versions and caches are maintained there).
+ */
+@ApplicationScoped
+public class ReactiveCourseRepository implements ReactivePanacheMongoRepository<Course> {
+
+    @Inject
+    CourseRepository courseRepository;
+
+    @Inject
+    CourseCache courseCache;
+
+    // see CourseRepository.findByIdReadOnly (the returned course must not be modified)
+    public Uni<Course> findByIdReadOnly(ObjectId id) {
+        Course cached = courseCache.getIfPresent(id);
+        if (cached != null) {
+            return Uni.createFrom().item(cached);
+        }
+        return mongoCollection().withDocumentClass(RawBsonDocument.class)
+            .find(Filters.eq("_id", id))
+            .collect().first()
+            .map(raw -> {
+                CourseCache.CachedCourse cachedCourse = courseRepository.decodeCachedCourse(raw);
+                if (cachedCourse == null) {
+                    return null;
+                }
+                courseCache.put(id, cachedCourse);
+                return cachedCourse.course;
+            });
+    }
+
+    // see CourseRepository.findVersion
+    public Uni<Long> findVersion(ObjectId id) {
+        return mongoCollection().withDocumentClass(Document.class)
+            .find(Filters.eq("_id", id), new FindOptions().projection(Projections.include("version")))
+            .collect().first()
+            .map(course -> {
+                if (course == null) {
+                    return null;
+                }
+                Long version = course.getLong("version");
+                return version == null ? 0L : version;
+            });
+    }
+
+    // see CourseRepository.findCourseWithForm (the returned course is incomplete and must never be written back)
+    public Uni<Course> findCourseWithForm(ObjectId courseId, ObjectId formId) {
+        Course cached = courseCache.getIfPresent(courseId);
+        if (cached != null) {
+            return Uni.createFrom().item(cached.getFormById(formId) == null ? null : cached);
+        }
+        return mongoCollection().aggregate(CourseRepository.courseWithFormPipeline(courseId, formId)).collect().first();
+    }
+}
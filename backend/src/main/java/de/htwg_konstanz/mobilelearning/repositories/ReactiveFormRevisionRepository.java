@@ -0,0 +1,18 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.models.FormRevision;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+// non-blocking read of the revisions of the FormRevisionRepository
+@ApplicationScoped
+public class ReactiveFormRevisionRepository implements ReactivePanacheMongoRepository<FormRevision> {
+
+    // 0 if the results and participants of the form never changed
+    public Uni<Long> findRevision(ObjectId formId) {
+        return findById(formId).map(formRevision -> formRevision == null || formRevision.getRevision() == null ? 0L : formRevision.getRevision());
+    }
+}
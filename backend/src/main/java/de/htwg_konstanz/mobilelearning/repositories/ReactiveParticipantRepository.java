@@ -0,0 +1,19 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.models.quiz.QuizParticipant;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+// non-blocking variants of the read queries of the ParticipantRepository
+@ApplicationScoped
+public class ReactiveParticipantRepository implements ReactivePanacheMongoRepository<QuizParticipant> {
+
+    public Uni<List<QuizParticipant>> findByFormId(ObjectId formId) {
+        return find("formId", formId).list();
+    }
+}
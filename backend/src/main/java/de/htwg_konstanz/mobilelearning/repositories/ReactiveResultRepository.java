@@ -0,0 +1,23 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.models.Result;
+import de.htwg_konstanz.mobilelearning.models.ResultBucket;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepository;
+import io.quarkus.panache.common.Sort;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+// non-blocking variants of the read queries of the ResultRepository
+@ApplicationScoped
+public class ReactiveResultRepository implements ReactivePanacheMongoRepository<ResultBucket> {
+
+    // results of a form grouped by question wrapper id (in insertion order)
+    public Uni<Map<ObjectId, List<Result>>> findResultsByFormId(ObjectId formId) {
+        return find("formId", Sort.ascending("_id"), formId).list().map(ResultRepository::groupByQuestionWrapper);
+    }
+}
@@ -0,0 +1,101 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.PushOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+
+import de.htwg_konstanz.mobilelearning.models.auth.RefreshToken;
+import de.htwg_konstanz.mobilelearning.models.auth.User;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/*
+ * Refresh tokens for renewing a JWT without logging in again.
+ * Tokens are random, only their SHA-256 hash is stored and every use replaces the token (rotation).
+ * The last replaced hashes are kept, so that the reuse of a rotated token can be detected.
+ * Expired tokens are removed by a TTL index on expiresAt.
+ */
+@ApplicationScoped
+public class RefreshTokenRepository implements PanacheMongoRepository<RefreshToken> {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // replaced hashes kept per token (older ones are no longer detected as reuse)
+    private static final int PREVIOUS_HASHES = 20;
+
+    @ConfigProperty(name = "mobilelearning.refresh-token.ttl-days", defaultValue = "30")
+    Long ttlDays;
+
+    // issues a new refresh token for the user and returns it (the token itself is not stored)
+    public String issue(User user) {
+        String token = newToken();
+        Date expiresAt = new Date(System.currentTimeMillis() + ttlDays * 24L * 60 * 60 * 1000);
+        persist(new RefreshToken(hash(token), user, expiresAt));
+        return token;
+    }
+
+    /*
+     * Redeems the token and replaces it with newToken in one indexed update (the token can only be used once).
+     * Returns null if the token is unknown, already used or expired.
+     */
+    public RefreshToken redeem(String token, String newToken) {
+        return mongoCollection().findOneAndUpdate(
+            Filters.and(Filters.eq("tokenHash", hash(token)), Filters.gt("expiresAt", new Date())),
+            Updates.combine(
+                Updates.set("tokenHash", hash(newToken)),
+                Updates.pushEach("previousHashes", List.of(hash(token)), new PushOptions().slice(-PREVIOUS_HASHES))
+            ),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+        );
+    }
+
+    public Boolean revoke(String token) {
+        return delete("tokenHash", hash(token)) > 0;
+    }
+
+    /*
+     * Checks if the token was already replaced by rotation (used by someone else before).
+     * In that case all tokens of the user are revoked and the user id is returned, otherwise null.
+     */
+    public ObjectId revokeAllIfRotated(String token) {
+        RefreshToken rotated = find("previousHashes", hash(token)).firstResult();
+        if (rotated == null) {
+            return null;
+        }
+        this.revokeAll(rotated.getUserId());
+        return rotated.getUserId();
+    }
+
+    // logs the user out everywhere
+    public long revokeAll(ObjectId userId) {
+        return delete("userId", userId);
+    }
+
+    public static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
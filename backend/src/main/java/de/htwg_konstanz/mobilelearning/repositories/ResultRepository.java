@@ -0,0 +1,320 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache;
+import de.htwg_konstanz.mobilelearning.models.Result;
+import de.htwg_konstanz.mobilelearning.models.ResultBucket;
+import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+@ApplicationScoped
+public class ResultRepository implements PanacheMongoRepository<ResultBucket> {
+
+    // max number of results stored in one bucket document
+    public static final int BUCKET_SIZE = 100;
+
+    private static final String SUBMISSION_COLLECTION = "ResultSubmission";
+
+    // buckets fetched per round trip by exports (at most EXPORT_BATCH_SIZE * BUCKET_SIZE results in memory)
+    private static final int EXPORT_BATCH_SIZE = 20;
+
+    @Inject
+    CourseRepository courseRepository;
+
+    @Inject
+    FormViewCache formViewCache;
+
+    void onStart(@Observes StartupEvent event) {
+        this.migrateEmbeddedResults();
+        this.backfillSubmissions();
+    }
+
+    /*
+     * Adds a result to the current (not full) bucket of the question wrapper.
+     * If there is no such bucket, a new one is created by the upsert.
+     * Returns false if the user already submitted a result for this question wrapper
+     * (results stored before the submissions were recorded are backfilled on startup).
+     */
+    public Boolean addResult(ObjectId courseId, ObjectId formId, ObjectId questionWrapperId, Result result) {
+
+        if (result == null) {
+            return false;
+        }
+
+        // the insert of the submission (unique _id) decides between parallel submissions of the same user
+        Document submissionId = submissionId(formId, questionWrapperId, result);
+        try {
+            submissionCollection().insertOne(new Document("_id", submissionId)
+                .append("courseId", courseId)
+                .append("formId", formId));
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+
+        try {
+            mongoCollection().updateOne(
+                Filters.and(
+                    Filters.eq("formId", formId),
+                    Filters.eq("questionWrapperId", questionWrapperId),
+                    Filters.lt("count", BUCKET_SIZE)
+                ),
+                Updates.combine(
+                    Updates.push("results", result),
+                    Updates.inc("count", 1),
+                    Updates.setOnInsert("courseId", courseId)
+                ),
+                new UpdateOptions().upsert(true)
+            );
+        } catch (RuntimeException e) {
+            // the user can submit again
+            submissionCollection().deleteOne(Filters.eq("_id", submissionId));
+            throw e;
+        }
+        formViewCache.resultsChanged(formId);
+        return true;
+    }
+
+    // inserts new buckets together with the submissions of their results (e.g. generated data)
+    public void persistWithSubmissions(List<ResultBucket> buckets) {
+        persist(buckets);
+        List<Document> submissions = new ArrayList<Document>();
+        for (ResultBucket bucket : buckets) {
+            for (Result result : bucket.getResults()) {
+                submissions.add(new Document("_id", submissionId(bucket.getFormId(), bucket.getQuestionWrapperId(), result))
+                    .append("courseId", bucket.getCourseId())
+                    .append("formId", bucket.getFormId()));
+            }
+        }
+        if (!submissions.isEmpty()) {
+            submissionCollection().insertMany(submissions, new InsertManyOptions().ordered(false));
+        }
+    }
+
+    // one document per submitted result (form, question wrapper and user), removed together with the results
+    public MongoCollection<Document> submissionCollection() {
+        return mongoDatabase().getCollection(SUBMISSION_COLLECTION);
+    }
+
+    private static Document submissionId(ObjectId formId, ObjectId questionWrapperId, Result result) {
+        return submissionId(formId, questionWrapperId, result.hashedUserId != null ? result.hashedUserId : result.userId.toHexString());
+    }
+
+    private static Document submissionId(ObjectId formId, ObjectId questionWrapperId, String user) {
+        return new Document("formId", formId)
+            .append("questionWrapperId", questionWrapperId)
+            .append("user", user);
+    }
+
+    /*
+     * Upserts the submissions of stored results (documents of the results array of a bucket),
+     * so that users can not submit again. Results without a user are skipped.
+     */
+    private void writeSubmissions(ObjectId courseId, ObjectId formId, ObjectId questionWrapperId, List<Document> results) {
+        List<WriteModel<Document>> upserts = new ArrayList<WriteModel<Document>>();
+        for (Document result : results) {
+            String user = result.getString("hashedUserId");
+            if (user == null && result.getObjectId("userId") != null) {
+                user = result.getObjectId("userId").toHexString();
+            }
+            if (user == null) {
+                continue;
+            }
+            upserts.add(new UpdateOneModel<Document>(
+                Filters.eq("_id", submissionId(formId, questionWrapperId, user)),
+                Updates.combine(Updates.setOnInsert("courseId", courseId), Updates.setOnInsert("formId", formId)),
+                new UpdateOptions().upsert(true)
+            ));
+        }
+        if (!upserts.isEmpty()) {
+            submissionCollection().bulkWrite(upserts, new BulkWriteOptions().ordered(false));
+        }
+    }
+
+    // results of a form grouped by question wrapper id (in insertion order)
+    public Map<ObjectId, List<Result>> findResultsByFormId(ObjectId formId) {
+        return groupByQuestionWrapper(find("formId", Sort.ascending("_id"), formId).list());
+    }
+
+    // results of all forms of a course grouped by question wrapper id (in insertion order)
+    public Map<ObjectId, List<Result>> findResultsByCourseId(ObjectId courseId) {
+        return groupByQuestionWrapper(find("courseId", Sort.ascending("_id"), courseId).list());
+    }
+
+    public List<Result> findResults(ObjectId formId, ObjectId questionWrapperId) {
+        List<Result> results = new ArrayList<Result>();
+        find("formId = ?1 and questionWrapperId = ?2", Sort.ascending("_id"), formId, questionWrapperId)
+            .list()
+            .forEach(bucket -> results.addAll(bucket.getResults()));
+        return results;
+    }
+
+    /*
+     * Result buckets for the export of a course or a single form (formId null), read one batch at a time.
+     * questionWrapperIds is optional, from and until (exclusive) only skip buckets without any result
+     * in the time range, the results themselves have to be filtered by the caller.
+     */
+    public FindIterable<ResultBucket> findBucketsForExport(ObjectId courseId, ObjectId formId, List<ObjectId> questionWrapperIds, Date from, Date until) {
+        List<Bson> filters = new ArrayList<Bson>();
+        filters.add(formId == null ? Filters.eq("courseId", courseId) : Filters.eq("formId", formId));
+        if (questionWrapperIds != null && !questionWrapperIds.isEmpty()) {
+            filters.add(Filters.in("questionWrapperId", questionWrapperIds));
+        }
+        if (from != null || until != null) {
+            // the ids of the results contain the time they were submitted
+            List<Bson> range = new ArrayList<Bson>();
+            if (from != null) {
+                range.add(Filters.gte("_id", firstIdAt(from)));
+            }
+            if (until != null) {
+                // ids only have seconds: up to the next full second, the exact comparison is done by the caller
+                range.add(Filters.lt("_id", firstIdAt(new Date((until.getTime() + 999) / 1000 * 1000))));
+            }
+            filters.add(Filters.elemMatch("results", Filters.and(range)));
+        }
+        return mongoCollection().find(Filters.and(filters)).batchSize(EXPORT_BATCH_SIZE);
+    }
+
+    // smallest object id of the second of the date
+    private static ObjectId firstIdAt(Date date) {
+        return new ObjectId(String.format("%08x", date.getTime() / 1000) + "0000000000000000");
+    }
+
+    public long deleteByFormId(ObjectId formId) {
+        long deleted = delete("formId", formId);
+        submissionCollection().deleteMany(Filters.eq("formId", formId));
+        formViewCache.resultsChanged(formId);
+        return deleted;
+    }
+
+    public long deleteByCourseId(ObjectId courseId) {
+        long deleted = delete("courseId", courseId);
+        submissionCollection().deleteMany(Filters.eq("courseId", courseId));
+        formViewCache.invalidateAll();
+        return deleted;
+    }
+
+    @Override
+    public long deleteAll() {
+        long deleted = PanacheMongoRepository.super.deleteAll();
+        submissionCollection().deleteMany(new Document());
+        formViewCache.invalidateAll();
+        return deleted;
+    }
+
+    static Map<ObjectId, List<Result>> groupByQuestionWrapper(List<ResultBucket> buckets) {
+        Map<ObjectId, List<Result>> results = new HashMap<ObjectId, List<Result>>();
+        for (ResultBucket bucket : buckets) {
+            results.computeIfAbsent(bucket.getQuestionWrapperId(), id -> new ArrayList<Result>())
+                .addAll(bucket.getResults());
+        }
+        return results;
+    }
+
+    /*
+     * Moves results that are still embedded in course documents (stored before the results
+     * got their own collection) into buckets and removes them from the course documents.
+     * Safe to run again after a crash: every chunk is upserted by its position (migratedChunk),
+     * chunks that were already moved stay as they are.
+     */
+    void migrateEmbeddedResults() {
+        MongoCollection<Document> courses = courseRepository.mongoCollection().withDocumentClass(Document.class);
+        MongoCollection<Document> buckets = mongoCollection().withDocumentClass(Document.class);
+
+        Bson hasEmbeddedResults = Filters.or(
+            Filters.exists("feedbackForms.questions.results.0"),
+            Filters.exists("quizForms.questions.results.0")
+        );
+
+        for (Document course : courses.find(hasEmbeddedResults)) {
+            ObjectId courseId = course.getObjectId("_id");
+            List<Document> forms = new ArrayList<Document>();
+            forms.addAll(course.getList("feedbackForms", Document.class, List.of()));
+            forms.addAll(course.getList("quizForms", Document.class, List.of()));
+
+            for (Document form : forms) {
+                for (Document question : form.getList("questions", Document.class, List.of())) {
+                    List<Document> results = question.getList("results", Document.class, List.of());
+                    for (int from = 0; from < results.size(); from += BUCKET_SIZE) {
+                        List<Document> chunk = results.subList(from, Math.min(from + BUCKET_SIZE, results.size()));
+                        buckets.updateOne(
+                            Filters.and(
+                                Filters.eq("formId", form.getObjectId("_id")),
+                                Filters.eq("questionWrapperId", question.getObjectId("_id")),
+                                Filters.eq("migratedChunk", from / BUCKET_SIZE)
+                            ),
+                            Updates.combine(
+                                Updates.setOnInsert("courseId", courseId),
+                                Updates.setOnInsert("count", chunk.size()),
+                                Updates.setOnInsert("results", chunk)
+                            ),
+                            new UpdateOptions().upsert(true)
+                        );
+                        this.writeSubmissions(courseId, form.getObjectId("_id"), question.getObjectId("_id"), chunk);
+                    }
+                    question.remove("results");
+                }
+            }
+
+            // write back the forms without the embedded results
+            courses.updateOne(Filters.eq("_id", courseId), Updates.combine(
+                Updates.set("feedbackForms", course.getList("feedbackForms", Document.class, List.of())),
+                Updates.set("quizForms", course.getList("quizForms", Document.class, List.of()))
+            ));
+            System.out.println("Moved embedded results of course " + courseId.toHexString() + " into result buckets");
+        }
+    }
+
+    /*
+     * Records the submissions of results that were stored in buckets before the submissions
+     * were recorded. Only runs through the buckets if there are fewer submissions than results.
+     */
+    void backfillSubmissions() {
+        Document total = mongoCollection().withDocumentClass(Document.class).aggregate(List.of(
+            Aggregates.group(null, Accumulators.sum("results", "$count"))
+        )).first();
+        long results = total == null ? 0 : ((Number) total.get("results")).longValue();
+        if (submissionCollection().countDocuments() >= results) {
+            return;
+        }
+
+        for (Document bucket : mongoCollection().withDocumentClass(Document.class).find().batchSize(EXPORT_BATCH_SIZE)) {
+            this.writeSubmissions(
+                bucket.getObjectId("courseId"),
+                bucket.getObjectId("formId"),
+                bucket.getObjectId("questionWrapperId"),
+                bucket.getList("results", Document.class, List.of())
+            );
+        }
+        System.out.println("Recorded the submissions of " + results + " stored results");
+    }
+}
@@ -1,12 +1,43 @@
 package de.htwg_konstanz.mobilelearning.repositories;
 
-import de.htwg_konstanz.mobilelearning.models.auth.User;
+import java.time.Duration;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserPrincipal;
 import io.quarkus.mongodb.panache.PanacheMongoRepository;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 
 @ApplicationScoped
 public class UserRepository implements PanacheMongoRepository<User> {
+
+    @ConfigProperty(name = "mobilelearning.user-cache.ttl-seconds", defaultValue = "300")
+    Long ttlSeconds;
+
+    @ConfigProperty(name = "mobilelearning.user-cache.max-size", defaultValue = "10000")
+    Long maxSize;
+
+    // principals by id and by username (unknown users are not cached, they may be created right after)
+    private Cache<ObjectId, UserPrincipal> principalsById;
+    private Cache<String, UserPrincipal> principalsByUsername;
+
+    @PostConstruct
+    void init() {
+        this.principalsById = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .maximumSize(maxSize)
+            .build();
+        this.principalsByUsername = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .maximumSize(maxSize)
+            .build();
+    }
     
     public User findById(String id) {
         return find("id", id).firstResult();
@@ -15,4 +46,97 @@ public class UserRepository implements PanacheMongoRepository<User> {
     public User findByUsername(String username) {
         return find("username", username).firstResult();
     }
+
+    // cached lookup for the socket and login paths (null if the user does not exist)
+    public UserPrincipal findPrincipalById(ObjectId id) {
+        UserPrincipal principal = principalsById.getIfPresent(id);
+        if (principal != null) {
+            return principal;
+        }
+        return this.cache(findById(id));
+    }
+
+    public UserPrincipal findPrincipalByUsername(String username) {
+        UserPrincipal principal = principalsByUsername.getIfPresent(username);
+        if (principal != null) {
+            return principal;
+        }
+        return this.cache(findByUsername(username));
+    }
+
+    // the writes of the repository invalidate the cached principals of the user
+    @Override
+    public void persist(User user) {
+        PanacheMongoRepository.super.persist(user);
+        this.invalidate(user);
+    }
+
+    @Override
+    public void update(User user) {
+        PanacheMongoRepository.super.update(user);
+        this.invalidate(user);
+    }
+
+    @Override
+    public void persistOrUpdate(User user) {
+        PanacheMongoRepository.super.persistOrUpdate(user);
+        this.invalidate(user);
+    }
+
+    @Override
+    public void delete(User user) {
+        PanacheMongoRepository.super.delete(user);
+        this.invalidate(user);
+    }
+
+    @Override
+    public boolean deleteById(ObjectId id) {
+        boolean deleted = PanacheMongoRepository.super.deleteById(id);
+        principalsById.invalidate(id);
+        // the username of the user is unknown here
+        principalsByUsername.invalidateAll();
+        return deleted;
+    }
+
+    @Override
+    public long deleteAll() {
+        long deleted = PanacheMongoRepository.super.deleteAll();
+        this.invalidateAll();
+        return deleted;
+    }
+
+    // has to be called after a user was changed or deleted without the repository (otherwise the change is visible after the TTL)
+    public void invalidate(User user) {
+        if (user == null) {
+            return;
+        }
+        UserPrincipal cached = user.getId() != null ? principalsById.getIfPresent(user.getId()) : null;
+        if (user.getId() != null) {
+            principalsById.invalidate(user.getId());
+        }
+        if (user.getUsername() != null) {
+            principalsByUsername.invalidate(user.getUsername());
+        }
+        // the username may have changed as well
+        if (cached != null && cached.getUsername() != null) {
+            principalsByUsername.invalidate(cached.getUsername());
+        }
+    }
+
+    public void invalidateAll() {
+        principalsById.invalidateAll();
+        principalsByUsername.invalidateAll();
+    }
+
+    private UserPrincipal cache(User user) {
+        if (user == null) {
+            return null;
+        }
+        UserPrincipal principal = new UserPrincipal(user);
+        principalsById.put(principal.getId(), principal);
+        if (principal.getUsername() != null) {
+            principalsByUsername.put(principal.getUsername(), principal);
+        }
+        return principal;
+    }
 }
@@ -1,17 +1,44 @@
 package de.htwg_konstanz.mobilelearning.services;
 
-import de.htwg_konstanz.mobilelearning.helper.AliasGenerator;
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.helper.AliasAllocator;
+import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
+import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 
 @Path("/funnyalias")
 @Produces("text/plain")
 public class AliasService {
+
+    @Inject
+    AliasAllocator aliasAllocator;
+
+    @Inject
+    CourseRepository courseRepository;
     
+    // an alias that was not handed out before (for the quiz form if given, this advances the stored cursor of the form)
     @GET
     @Path("/")
-    public String getRandomAlias() {
-        return AliasGenerator.generateAlias();
+    @RolesAllowed({ UserRole.STUDENT, UserRole.PROF })
+    public String getRandomAlias(@QueryParam("courseId") String courseId, @QueryParam("formId") String formId) {
+        if (formId == null || formId.isEmpty()) {
+            return aliasAllocator.next(null);
+        }
+        if (!ObjectId.isValid(formId) || courseId == null || !ObjectId.isValid(courseId)) {
+            throw new BadRequestException("Invalid course or form id");
+        }
+        ObjectId formObjectId = new ObjectId(formId);
+        if (!courseRepository.existsQuizForm(new ObjectId(courseId), formObjectId)) {
+            throw new NotFoundException("QuizForm not found");
+        }
+        return aliasAllocator.next(formObjectId);
     }
 }
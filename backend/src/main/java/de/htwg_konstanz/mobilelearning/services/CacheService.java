@@ -0,0 +1,28 @@
+package de.htwg_konstanz.mobilelearning.services;
+
+import java.util.Map;
+
+import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
+import de.htwg_konstanz.mobilelearning.repositories.CourseCache;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/cache")
+public class CacheService {
+
+    @Inject
+    private CourseCache courseCache;
+
+    // hit rate, evictions and saved decode time of the course cache
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/stats")
+    @RolesAllowed({ UserRole.ADMIN })
+    public Map<String, Object> getCacheStats() {
+        return courseCache.getStats();
+    }
+}
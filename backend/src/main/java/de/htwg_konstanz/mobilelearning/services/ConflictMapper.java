@@ -0,0 +1,17 @@
+package de.htwg_konstanz.mobilelearning.services;
+
+import java.util.ConcurrentModificationException;
+
+import org.jboss.resteasy.reactive.RestResponse;
+import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
+
+import jakarta.ws.rs.core.Response;
+
+// a course was changed by another request since it was loaded (see CourseRepository), the client has to load it again
+public class ConflictMapper {
+
+    @ServerExceptionMapper
+    public RestResponse<String> mapConcurrentModification(ConcurrentModificationException e) {
+        return RestResponse.status(Response.Status.CONFLICT, e.getMessage());
+    }
+}
@@ -3,11 +3,11 @@ package de.htwg_konstanz.mobilelearning.services;
 import org.jboss.resteasy.reactive.RestPath;
 import org.json.JSONObject;
 
-import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.enums.FormType;
+import de.htwg_konstanz.mobilelearning.models.ConnectCode;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
-import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
-import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
-import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveConnectCodeRepository;
+import io.smallrye.mutiny.Uni;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
@@ -18,61 +18,40 @@ import jakarta.ws.rs.core.MediaType;
 
 @Path("/connectto")
 public class ConnectCodeService {
-    
+
     @Inject
-    private CourseRepository courseRepository;
+    private ReactiveConnectCodeRepository reactiveConnectCodeRepository;
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/feedback/{connectCode}")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public String getFeedbackFormConnectCode(@RestPath Integer connectCode) {
-        Course course = courseRepository.findByFeedbackFormConnectCode(connectCode);
-        if (course == null) {
-            throw new NotFoundException("Course with feedback form connect code " + connectCode + " not found.");
-        }
-
-        FeedbackForm feedbackForm = null;
-        for (FeedbackForm form : course.getFeedbackForms()) {
-            if (form.getConnectCode().equals(connectCode)) {
-                feedbackForm = form;
+    public Uni<String> getFeedbackFormConnectCode(@RestPath Integer connectCode) {
+        return reactiveConnectCodeRepository.resolve(connectCode).map(resolved -> {
+            if (resolved == null || resolved.getType() != FormType.FEEDBACK) {
+                throw new NotFoundException("Feedback form with connect code " + connectCode + " not found.");
             }
-        };
-
-        if (feedbackForm == null) {
-            throw new NotFoundException("Feedback form with connect code " + connectCode + " not found.");
-        }
-
-        JSONObject jsonObject = new JSONObject();
-        jsonObject.put("courseId", course.getId().toHexString());
-        jsonObject.put("formId", feedbackForm.getId().toHexString());
-        return jsonObject.toString();
+            return toJson(resolved);
+        });
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/quiz/{connectCode}")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public String getQuizFormConnectCode(@RestPath Integer connectCode) {
-        Course course = courseRepository.findByQuizFormConnectCode(connectCode);
-        if (course == null) {
-            throw new NotFoundException("Course with quiz form connect code " + connectCode + " not found.");
-        }
-
-        QuizForm quizForm = null;
-        for (QuizForm form : course.getQuizForms()) {
-            if (form.getConnectCode().equals(connectCode)) {
-                quizForm = form;
+    public Uni<String> getQuizFormConnectCode(@RestPath Integer connectCode) {
+        return reactiveConnectCodeRepository.resolve(connectCode).map(resolved -> {
+            if (resolved == null || resolved.getType() != FormType.QUIZ) {
+                throw new NotFoundException("Quiz form with connect code " + connectCode + " not found.");
             }
-        };
-
-        if (quizForm == null) {
-            throw new NotFoundException("Quiz form with connect code " + connectCode + " not found.");
-        }
+            return toJson(resolved);
+        });
+    }
 
+    private static String toJson(ConnectCode resolved) {
         JSONObject jsonObject = new JSONObject();
-        jsonObject.put("courseId", course.getId().toHexString());
-        jsonObject.put("formId", quizForm.getId().toHexString());
+        jsonObject.put("courseId", resolved.getCourseId().toHexString());
+        jsonObject.put("formId", resolved.getFormId().toHexString());
         return jsonObject.toString();
     }
-}
\ No newline at end of file
+}
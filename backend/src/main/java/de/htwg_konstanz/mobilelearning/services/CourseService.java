@@ -1,57 +1,140 @@
 package de.htwg_konstanz.mobilelearning.services;
 
 import java.util.List;
+import java.util.Map;
 
 import org.bson.types.ObjectId;
 import org.jboss.resteasy.reactive.RestPath;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoCursor;
+
+import de.htwg_konstanz.mobilelearning.helper.ConditionalResponse;
+import de.htwg_konstanz.mobilelearning.helper.Hasher;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveCourseRepository;
+import io.smallrye.mutiny.Uni;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
 
 @Path("/course")
 public class CourseService {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Inject
     private CourseRepository courseRepository;
 
+    @Inject
+    private ReactiveCourseRepository reactiveCourseRepository;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{courseId}")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public Course getCourse(@RestPath String courseId) {
+    public Uni<Response> getCourse(@Context Request request, @RestPath String courseId) {
         ObjectId courseObjectId = new ObjectId(courseId);
-        Course course = courseRepository.findById(courseObjectId);
-        return course;
+
+        // the client already has the current version (only the version is loaded)
+        return reactiveCourseRepository.findVersion(courseObjectId).flatMap(version -> {
+            if (version == null) {
+                throw new NotFoundException("Course not found");
+            }
+            Response notModified = ConditionalResponse.notModified(request, courseEtag(courseObjectId, version));
+            if (notModified != null) {
+                return Uni.createFrom().item(notModified);
+            }
+
+            return reactiveCourseRepository.findByIdReadOnly(courseObjectId).map(course -> {
+                if (course == null) {
+                    throw new NotFoundException("Course not found");
+                }
+                return ConditionalResponse.ok(course, courseEtag(courseObjectId, course.getVersion()));
+            });
+        });
     }
 
+    /*
+     * Course list (summaries without questions, results and participants), ordered by id.
+     * Paginated with limit and after (id of the last course of the previous page), the link
+     * to the next page is sent in the Link header. Without limit and after, all courses are
+     * returned (as before the pagination, clients that do not follow the Link header keep working).
+     * name filters by name prefix.
+     * Stays blocking: the summaries are streamed from the cursor (StreamingOutput).
+     */
     @GET
     @Path("")
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public List<Course> getCourses() {
-        List<Course> courses = courseRepository.listAll();
-        courses.forEach(course -> {
-            course.feedbackForms.forEach(form -> {
-                form.questions = List.of();
-                form.clearResults();
-            });
-            course.quizForms.forEach(form -> {
-                form.questions = List.of();
-                form.clearResults();
-                form.clearParticipants();
-            });
-        });
-        return courses;
+    public Response getCourses(@Context Request request, @Context UriInfo uriInfo, @QueryParam("name") String name, @QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+
+        if (after != null && !ObjectId.isValid(after)) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            throw new BadRequestException("Limit has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+        ObjectId afterObjectId = after == null ? null : new ObjectId(after);
+
+        // 0: no limit (unpaginated list)
+        boolean paginated = limit != null || after != null;
+        int pageSize = !paginated ? 0 : limit != null ? limit : DEFAULT_PAGE_SIZE;
+
+        // ids and versions of the page first: the ETag and the link to the next page are known before streaming
+        Map<ObjectId, Long> versions = courseRepository.findCourseListPage(name, afterObjectId, pageSize);
+        String etag = "courses-" + Hasher.hash(versions.toString() + "|" + pageSize);
+        Response notModified = ConditionalResponse.notModified(request, etag);
+        if (notModified != null) {
+            return notModified;
+        }
+        if (versions.isEmpty()) {
+            return ConditionalResponse.ok(List.of(), etag);
+        }
+        List<ObjectId> ids = List.copyOf(versions.keySet());
+        ObjectId last = ids.get(ids.size() - 1);
+
+        // the summaries are written one by one while reading the cursor
+        StreamingOutput courses = output -> {
+            try (
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+                MongoCursor<Course> cursor = courseRepository.findCourseSummaries(name, afterObjectId, last).iterator()
+            ) {
+                generator.writeStartArray();
+                while (cursor.hasNext()) {
+                    objectMapper.writeValue(generator, cursor.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+
+        Response response = ConditionalResponse.ok(courses, etag);
+        if (paginated && ids.size() == pageSize) {
+            return Response.fromResponse(response)
+                .link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", last.toHexString()).build(), "next")
+                .build();
+        }
+        return response;
     }
 
     @PUT
@@ -101,4 +184,8 @@ public class CourseService {
         courseRepository.persist(course);
         return course;
     }
+
+    private static String courseEtag(ObjectId courseId, Long version) {
+        return "course-" + courseId.toHexString() + "-" + (version == null ? 0L : version);
+    }
 }
@@ -0,0 +1,144 @@
+package de.htwg_konstanz.mobilelearning.services;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.bson.types.ObjectId;
+import org.jboss.resteasy.reactive.RestPath;
+
+import com.mongodb.client.MongoCursor;
+
+import de.htwg_konstanz.mobilelearning.helper.ResultExport;
+import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.ResultBucket;
+import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
+import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
+import io.smallrye.jwt.auth.principal.JWTCallerPrincipal;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/*
+ * Export of the results of a course or a single form for analysis (only for owners of the course).
+ * The results are streamed from the database as NDJSON or CSV (gzipped if the client accepts it),
+ * filtered by question wrapper ids (question) and the submission time (from, until as ISO-8601 instants).
+ */
+@Path("/course/{courseId}/export")
+public class ExportService {
+
+    @Inject
+    private CourseRepository courseRepository;
+
+    @Inject
+    private ResultRepository resultRepository;
+
+    @GET
+    @Produces({ "application/x-ndjson", "text/csv" })
+    @Path("")
+    @RolesAllowed({ UserRole.PROF })
+    public Response exportCourseResults(@Context SecurityContext ctx, @RestPath String courseId, @QueryParam("format") @DefaultValue("ndjson") String format, @QueryParam("question") List<String> questions, @QueryParam("from") String from, @QueryParam("until") String until, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return this.export(ctx, new ObjectId(courseId), null, format, questions, from, until, acceptEncoding);
+    }
+
+    @GET
+    @Produces({ "application/x-ndjson", "text/csv" })
+    @Path("/{formId}")
+    @RolesAllowed({ UserRole.PROF })
+    public Response exportFormResults(@Context SecurityContext ctx, @RestPath String courseId, @RestPath String formId, @QueryParam("format") @DefaultValue("ndjson") String format, @QueryParam("question") List<String> questions, @QueryParam("from") String from, @QueryParam("until") String until, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return this.export(ctx, new ObjectId(courseId), new ObjectId(formId), format, questions, from, until, acceptEncoding);
+    }
+
+    private Response export(SecurityContext ctx, ObjectId courseId, ObjectId formId, String format, List<String> questions, String from, String until, String acceptEncoding) {
+
+        // validate the parameters before anything is streamed
+        ResultExport.Format exportFormat = parseFormat(format);
+        List<ObjectId> questionWrapperIds = parseIds(questions);
+        Date fromDate = parseDate(from, "from");
+        Date untilDate = parseDate(until, "until");
+
+        Course course = courseRepository.findByIdReadOnly(courseId);
+        if (course == null || (formId != null && course.getFormById(formId) == null)) {
+            throw new NotFoundException(formId == null ? "Course not found" : "Form not found");
+        }
+
+        // only owners see the results
+        String userId = ((JWTCallerPrincipal) ctx.getUserPrincipal()).getSubject();
+        if (!course.isOwner(userId)) {
+            throw new ForbiddenException("Only owners of the course can export results");
+        }
+
+        ResultExport resultExport = new ResultExport(course, fromDate, untilDate);
+        Boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        // the buckets are read batch by batch while writing
+        StreamingOutput output = stream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(stream, 8192) : stream;
+            try (MongoCursor<ResultBucket> buckets = resultRepository.findBucketsForExport(courseId, formId, questionWrapperIds, fromDate, untilDate).iterator()) {
+                resultExport.write(buckets, exportFormat, out);
+            }
+        };
+
+        String fileName = "results-" + (formId == null ? courseId : formId).toHexString() + "." + exportFormat.extension;
+        Response.ResponseBuilder response = Response.ok(output, exportFormat.mediaType)
+            .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .header("Cache-Control", "private, no-store");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    private static ResultExport.Format parseFormat(String format) {
+        for (ResultExport.Format exportFormat : ResultExport.Format.values()) {
+            if (exportFormat.extension.equalsIgnoreCase(format)) {
+                return exportFormat;
+            }
+        }
+        throw new BadRequestException("Format has to be ndjson or csv");
+    }
+
+    private static List<ObjectId> parseIds(List<String> ids) {
+        List<ObjectId> objectIds = new ArrayList<ObjectId>();
+        if (ids == null) {
+            return objectIds;
+        }
+        for (String id : ids) {
+            if (!ObjectId.isValid(id)) {
+                throw new BadRequestException("Invalid question id " + id);
+            }
+            objectIds.add(new ObjectId(id));
+        }
+        return objectIds;
+    }
+
+    private static Date parseDate(String date, String name) {
+        if (date == null || date.isEmpty()) {
+            return null;
+        }
+        try {
+            return Date.from(Instant.parse(date));
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException(name + " has to be an ISO-8601 instant (e.g. 2024-01-31T12:00:00Z)");
+        }
+    }
+}
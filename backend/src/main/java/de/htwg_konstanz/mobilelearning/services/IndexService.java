@@ -0,0 +1,43 @@
+package de.htwg_konstanz.mobilelearning.services;
+
+import java.util.List;
+import java.util.Map;
+
+import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
+import de.htwg_konstanz.mobilelearning.repositories.IndexProvisioner;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/indexes")
+public class IndexService {
+
+    @Inject
+    private IndexProvisioner indexProvisioner;
+
+    /*
+     * Usage stats of all indexes (an index with few ops next to a busy collection
+     * points to queries that scan instead of using the index)
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/stats")
+    @RolesAllowed({ UserRole.ADMIN })
+    public List<Map<String, Object>> getIndexStats() {
+        return indexProvisioner.getIndexStats();
+    }
+
+    // drops and recreates outdated indexes (only on purpose, never by a GET of a crawler or a prefetch)
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/provision")
+    @RolesAllowed({ UserRole.ADMIN })
+    public List<Map<String, Object>> provisionIndexes() {
+        indexProvisioner.provisionIndexes();
+        return indexProvisioner.getIndexStats();
+    }
+}
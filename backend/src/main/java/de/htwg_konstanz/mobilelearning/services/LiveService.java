@@ -1,13 +1,14 @@
 package de.htwg_konstanz.mobilelearning.services;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import de.htwg_konstanz.mobilelearning.enums.FormStatus;
-import de.htwg_konstanz.mobilelearning.models.Course;
+import org.bson.types.ObjectId;
+import org.jboss.resteasy.reactive.RestPath;
+
 import de.htwg_konstanz.mobilelearning.models.Form;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
-import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.LiveFormRegistry;
+import io.smallrye.common.annotation.NonBlocking;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
@@ -19,36 +20,25 @@ import jakarta.ws.rs.core.MediaType;
 public class LiveService {
 
     @Inject
-    private CourseRepository courseRepository;
+    private LiveFormRegistry liveFormRegistry;
 
+    // all started forms (answered from memory, so on the io thread)
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    @Path("/{courseId}")
+    @Path("")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
+    @NonBlocking
     public List<Form> getLiveForms() {
+        return liveFormRegistry.getLiveForms();
+    }
 
-        List<Form> forms = new ArrayList<Form>();
-
-        List<Course> courses = courseRepository.listAll();
-        courses.forEach(course -> {
-            course.feedbackForms.forEach(form -> {
-
-                if (form.status == FormStatus.STARTED) {
-                    forms.add(form);
-                }
-
-                forms.add(form.copyWithoutResults());
-            });
-            course.quizForms.forEach(form -> {
-
-                if (form.status == FormStatus.STARTED) {
-                    forms.add(form);
-                }
-
-                forms.add(form.copyWithoutResults());
-            });
-        });
-
-        return forms;
+    // started forms of a course (answered from memory, so on the io thread)
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{courseId}")
+    @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
+    @NonBlocking
+    public List<Form> getLiveForms(@RestPath String courseId) {
+        return liveFormRegistry.getLiveForms(new ObjectId(courseId));
     }
 }
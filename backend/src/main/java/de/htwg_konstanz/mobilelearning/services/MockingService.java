@@ -7,20 +7,30 @@ import org.bson.types.ObjectId;
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
 import de.htwg_konstanz.mobilelearning.enums.QuizQuestionType;
 import de.htwg_konstanz.mobilelearning.enums.FeedbackQuestionType;
+import de.htwg_konstanz.mobilelearning.helper.MockDataGenerator;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
 import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackQuestion;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizQuestion;
+import de.htwg_konstanz.mobilelearning.repositories.ConnectCodeRepository;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ParticipantRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
 import de.htwg_konstanz.mobilelearning.repositories.UserRepository;
 
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 
 @Path("/mock")
@@ -32,11 +42,73 @@ public class MockingService {
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private ResultRepository resultRepository;
+
+    @Inject
+    private ParticipantRepository participantRepository;
+
+    @Inject
+    private ConnectCodeRepository connectCodeRepository;
+
+    @Inject
+    private MockDataGenerator mockDataGenerator;
+
+    // upper limits of /mock/generate (forms per course, questions, results and participants per form)
+    private static final int MAX_COURSES = 1000;
+    private static final int MAX_FORMS = 50;
+    private static final int MAX_QUESTIONS = 20;
+    private static final int MAX_RESULTS = 1000;
+    private static final int MAX_PARTICIPANTS = 1000;
+
+    /*
+     * Generates synthetic courses with forms, questions, results and participants (e.g. semester-sized data for load tests).
+     * Example: POST /mock/generate?courses=40&forms=24&questions=8&results=150&participants=120
+     * The existing data is kept unless clear=true. Only admins, the sizes are capped (see MAX_*).
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/generate")
+    @RolesAllowed({ UserRole.ADMIN })
+    public Object generateData(
+            @QueryParam("courses") @DefaultValue("10") Integer courses,
+            @QueryParam("forms") @DefaultValue("12") Integer forms,
+            @QueryParam("questions") @DefaultValue("6") Integer questions,
+            @QueryParam("results") @DefaultValue("100") Integer results,
+            @QueryParam("participants") @DefaultValue("80") Integer participants,
+            @QueryParam("seed") @DefaultValue("42") Long seed,
+            @QueryParam("clear") @DefaultValue("false") Boolean clear) {
+
+        if (courses < 0 || forms < 0 || questions < 0 || results < 0 || participants < 0) {
+            throw new BadRequestException("Sizes must not be negative");
+        }
+        if (courses > MAX_COURSES || forms > MAX_FORMS || questions > MAX_QUESTIONS || results > MAX_RESULTS || participants > MAX_PARTICIPANTS) {
+            throw new BadRequestException("Sizes must not exceed courses=" + MAX_COURSES + ", forms=" + MAX_FORMS + ", questions=" + MAX_QUESTIONS
+                + ", results=" + MAX_RESULTS + ", participants=" + MAX_PARTICIPANTS);
+        }
+
+        if (clear) {
+            courseRepository.deleteAll();
+            resultRepository.deleteAll();
+            participantRepository.deleteAll();
+            connectCodeRepository.clear();
+        }
+
+        // generated courses belong to the test prof (if exists)
+        User prof = userRepository.findByUsername("Prof");
+        return mockDataGenerator.generate(new MockDataGenerator.Parameters(
+            courses, forms, questions, results, participants, seed, prof != null ? prof.getId() : null
+        ));
+    }
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/mock")
     public Object addData() {
         courseRepository.deleteAll();
+        resultRepository.deleteAll();
+        participantRepository.deleteAll();
+        connectCodeRepository.clear();
         // userRepository.deleteAll();
 
         // generate some FeedbackQuestions
@@ -248,6 +320,9 @@ public class MockingService {
     @Path("/deleteallcourses")
     public String deleteAllCourses() {
         courseRepository.deleteAll();
+        resultRepository.deleteAll();
+        participantRepository.deleteAll();
+        connectCodeRepository.clear();
         return "All Courses deleted";
     }
 }
@@ -1,12 +1,25 @@
 package de.htwg_konstanz.mobilelearning.services.api;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+
+import de.htwg_konstanz.mobilelearning.helper.ContentHash;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserPrincipal;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
 import de.htwg_konstanz.mobilelearning.repositories.UserRepository;
 import de.htwg_konstanz.mobilelearning.services.api.models.ApiCourse;
+import de.htwg_konstanz.mobilelearning.services.api.models.ApiCourseSummary;
+import de.htwg_konstanz.mobilelearning.services.api.models.ApiCourseSummary.Status;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.PATCH;
@@ -23,45 +36,122 @@ public class ApiService {
     @Inject
     private UserRepository userRepository;
 
+    /*
+     * Creates / updates the courses (based on key) and returns the outcome per course (in the order of the request).
+     * The existing courses are loaded with one query and all courses are written with one bulk write,
+     * a course that is invalid or not owned by the user fails without affecting the others.
+     * Courses, forms and questions whose content hash did not change since the last sync are skipped,
+     * changed courses only get updates of the changed fields.
+     */
     @PATCH
     @Path("/courses/")
-    public List<Course> updateCourses(List<ApiCourse> courses, @Context SecurityContext ctx) {
+    public List<ApiCourseSummary> updateCourses(List<ApiCourse> courses, @Context SecurityContext ctx) {
 
-        User user = userRepository.findByUsername(ctx.getUserPrincipal().getName());
-        if (user == null) {
+        UserPrincipal principal = userRepository.findPrincipalByUsername(ctx.getUserPrincipal().getName());
+        if (principal == null) {
             throw new NotFoundException("User not found.");
         }
+        User user = principal.toUser();
 
         // validate input
         if (courses == null || courses.isEmpty()) {
             throw new IllegalArgumentException("Courses must not be empty.");
         }
 
-        // create / update courses (based on key)
-        for (ApiCourse course : courses) {
-            if (course.getKey() == null || course.getKey().isEmpty()) {
-                throw new IllegalArgumentException("Course key must not be empty.");
+        // sync states of all existing courses at once
+        Set<String> keys = new HashSet<String>();
+        courses.forEach(course -> {
+            if (course != null && course.getKey() != null && !course.getKey().isEmpty()) {
+                keys.add(course.getKey());
             }
+        });
+        Map<String, Course> syncStates = new HashMap<String, Course>();
+        courseRepository.findSyncStatesByKeys(keys).forEach(course -> syncStates.put(course.getKey(), course));
 
-            // check if course already exists
-            Course existingCourse = courseRepository.findByKey(course.getKey());
-            if (existingCourse != null) {
+        // only the changed courses are loaded completely (and remembered as stored to write only the changes)
+        Set<String> changedKeys = new HashSet<String>();
+        courses.forEach(course -> {
+            if (course != null && syncStates.containsKey(course.getKey())) {
+                if (!ContentHash.of(course).equals(syncStates.get(course.getKey()).getApiHash())) {
+                    changedKeys.add(course.getKey());
+                }
+            }
+        });
+        Map<String, Course> existingCourses = new HashMap<String, Course>();
+        Map<ObjectId, BsonDocument> storedStates = new HashMap<ObjectId, BsonDocument>();
+        if (!changedKeys.isEmpty()) {
+            courseRepository.findByKeys(changedKeys).forEach(course -> {
+                existingCourses.put(course.getKey(), course);
+                storedStates.put(course.getId(), courseRepository.encode(course));
+            });
+        }
 
-                // check if user is owner of the course
-                if (!existingCourse.isOwner(user)) {
-                    throw new IllegalArgumentException("User is not owner of the course.");
+        // apply the changes in memory
+        List<ApiCourseSummary> summaries = new ArrayList<ApiCourseSummary>();
+        Map<String, Course> changedCourses = new LinkedHashMap<String, Course>();
+        Map<ObjectId, ApiCourseSummary> summariesByCourseId = new HashMap<ObjectId, ApiCourseSummary>();
+        Set<String> seenKeys = new HashSet<String>();
+        for (ApiCourse course : courses) {
+            String key = course == null ? null : course.getKey();
+            if (key == null || key.isEmpty()) {
+                summaries.add(ApiCourseSummary.failed(key, "Course key must not be empty."));
+                continue;
+            }
+            if (!seenKeys.add(key)) {
+                summaries.add(ApiCourseSummary.failed(key, "Course key is used more than once in the request."));
+                continue;
+            }
+
+            // unchanged since the last sync
+            Course syncState = syncStates.get(key);
+            if (syncState != null && !changedKeys.contains(key)) {
+                if (!syncState.isOwner(user)) {
+                    summaries.add(ApiCourseSummary.failed(key, "User is not owner of the course."));
+                } else {
+                    summaries.add(new ApiCourseSummary(key, syncState.getId().toHexString(), Status.UNCHANGED, null));
                 }
+                continue;
+            }
+
+            try {
+                Course existingCourse = existingCourses.get(key);
+                ApiCourseSummary summary;
+                if (existingCourse != null) {
+
+                    // check if user is owner of the course
+                    if (!existingCourse.isOwner(user)) {
+                        summaries.add(ApiCourseSummary.failed(key, "User is not owner of the course."));
+                        continue;
+                    }
 
-                existingCourse.updateFromApiCourse(course);
-                courseRepository.update(existingCourse);
-            } else {
-                Course newCourse = Course.fromApiCourse(course);
-                newCourse.addOwner(user.getId());
-                courseRepository.persist(newCourse);
+                    existingCourse.updateFromApiCourse(course);
+                    changedCourses.put(key, existingCourse);
+                    summary = new ApiCourseSummary(key, existingCourse.getId().toHexString(), Status.UPDATED, null);
+                    summariesByCourseId.put(existingCourse.getId(), summary);
+                } else {
+                    Course newCourse = Course.fromApiCourse(course);
+                    newCourse.addOwner(user.getId());
+                    changedCourses.put(key, newCourse);
+                    summary = new ApiCourseSummary(key, newCourse.getId().toHexString(), Status.CREATED, null);
+                    summariesByCourseId.put(newCourse.getId(), summary);
+                }
+                summaries.add(summary);
+            } catch (IllegalArgumentException e) {
+                summaries.add(ApiCourseSummary.failed(key, e.getMessage()));
             }
         }
 
-        return courseRepository.findAll().list();
+        // write all courses at once (courses rejected by the database are reported as failed)
+        courseRepository.persistOrUpdateAll(List.copyOf(changedCourses.values()), storedStates).forEach((courseId, error) -> {
+            ApiCourseSummary summary = summariesByCourseId.get(courseId);
+            if (summary.status == Status.CREATED) {
+                summary.id = null;
+            }
+            summary.status = Status.FAILED;
+            summary.message = error;
+        });
+
+        return summaries;
     }
 
 }
@@ -0,0 +1,44 @@
+package de.htwg_konstanz.mobilelearning.services.api.models;
+
+// outcome of the import of one course (returned instead of the imported courses)
+public class ApiCourseSummary {
+
+    public enum Status {
+        CREATED, UPDATED, UNCHANGED, FAILED
+    }
+
+    public String key;
+    public String id;
+    public Status status;
+    public String message;
+
+    public ApiCourseSummary() {
+    }
+
+    public ApiCourseSummary(String key, String id, Status status, String message) {
+        this.key = key;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static ApiCourseSummary failed(String key, String message) {
+        return new ApiCourseSummary(key, null, Status.FAILED, message);
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+}
@@ -1,24 +1,71 @@
 package de.htwg_konstanz.mobilelearning.services.auth;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
-import io.smallrye.jwt.auth.principal.DefaultJWTCallerPrincipal;
 import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 
 import de.htwg_konstanz.mobilelearning.models.auth.User;
+import io.smallrye.jwt.auth.principal.JWTParser;
+import io.smallrye.jwt.auth.principal.ParseException;
 import io.smallrye.jwt.build.Jwt;
 import jakarta.enterprise.context.ApplicationScoped;
-import org.jose4j.jwt.JwtClaims;
-import org.jose4j.jwt.consumer.InvalidJwtException;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class JwtService {
 
-        public DefaultJWTCallerPrincipal getJwtClaims(String jwt) throws InvalidJwtException {
-            String jwtJson = new String(Base64.getUrlDecoder().decode(jwt.split("\\.")[1]), StandardCharsets.UTF_8);
-            DefaultJWTCallerPrincipal defaultJWTCallerPrincipal = new DefaultJWTCallerPrincipal(JwtClaims.parse(jwtJson));
-            return defaultJWTCallerPrincipal;
+        @Inject
+        JWTParser jwtParser;
+
+        // verified tokens (by SHA-256 hash of the token) until they expire, so reconnecting sockets skip the signature check
+        private final Cache<String, JsonWebToken> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfter(new Expiry<String, JsonWebToken>() {
+                @Override
+                public long expireAfterCreate(String key, JsonWebToken token, long currentTime) {
+                    long millisLeft = token.getExpirationTime() * 1000L - System.currentTimeMillis();
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(millisLeft, 0));
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, JsonWebToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String key, JsonWebToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+        // verifies the signature and expiry of the token (e.g. of a socket connection, which can not send headers)
+        public JsonWebToken getJwtClaims(String jwt) throws ParseException {
+            String key = hash(jwt);
+            JsonWebToken token = verifiedTokens.getIfPresent(key);
+            if (token != null) {
+                return token;
+            }
+            token = jwtParser.parse(jwt);
+            verifiedTokens.put(key, token);
+            return token;
+        }
+
+        private static String hash(String jwt) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(jwt.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
         }
 
         public String getToken(User user) {
@@ -1,8 +1,17 @@
 package de.htwg_konstanz.mobilelearning.services.auth;
 
+import java.time.Duration;
 import java.util.Hashtable;
+import java.util.Optional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import de.htwg_konstanz.mobilelearning.models.auth.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
 
 import javax.naming.AuthenticationException;
 import javax.naming.Context;
@@ -13,52 +22,88 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Rdn;
 
+/*
+ * Login against the LDAP of the HTWG (bind as the user).
+ * The password is checked by a bind on its own connection, which is never pooled (a pooled connection
+ * stays bound and is reused without a new bind). The attributes of a user are read with one search,
+ * on the connection of the user or, if a service account is configured, on a pooled connection of the
+ * service account, and cached for a short time, so a repeated login only needs the bind.
+ * The pool settings are JVM launch properties (see the Dockerfiles).
+ */
+@ApplicationScoped
 public class LdapHtwg {
 
-    private static final String PRINCIPAL = "ou=users,dc=fh-konstanz,dc=de";
-    private static final String ldapURL = "ldap://ldap.htwg-konstanz.de:389";
+    // attributes of a directory entry in the format of Attribute.toString ("name: value"), as expected by User
+    private static class LdapEntry {
+        final String mail;
+        final String cn;
+        final String uid;
+        final String gidNumber;
 
-    public User doLogin(String username, String password) throws Exception {
+        LdapEntry(Attributes attributes) {
+            this.mail = attributes.get("mail") + "";
+            this.cn = attributes.get("cn") + "";
+            this.uid = attributes.get("uid") + "";
+            this.gidNumber = attributes.get("gidNumber") + "";
+        }
+    }
 
-        final String dn = "uid=" + username.trim() + "," + PRINCIPAL;
+    // e.g. an in-memory LDAP server for tests and load runs
+    @ConfigProperty(name = "mobilelearning.ldap.url", defaultValue = "ldap://ldap.htwg-konstanz.de:389")
+    String ldapUrl;
 
-        Hashtable<String, String> environment = new Hashtable<String, String>();
-        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        environment.put(Context.PROVIDER_URL, ldapURL);
-        environment.put(Context.SECURITY_AUTHENTICATION, "simple");
-        environment.put(Context.SECURITY_PRINCIPAL, dn);
-        environment.put(Context.SECURITY_CREDENTIALS, password);
+    @ConfigProperty(name = "mobilelearning.ldap.base-dn", defaultValue = "ou=users,dc=fh-konstanz,dc=de")
+    String baseDn;
+
+    @ConfigProperty(name = "mobilelearning.ldap.timeout-millis", defaultValue = "5000")
+    Long timeoutMillis;
+
+    @ConfigProperty(name = "mobilelearning.ldap.attribute-cache-seconds", defaultValue = "300")
+    Long attributeCacheSeconds;
+
+    // service account for the search (the search runs as the user if not set)
+    @ConfigProperty(name = "mobilelearning.ldap.search-dn")
+    Optional<String> searchDn;
+
+    @ConfigProperty(name = "mobilelearning.ldap.search-password")
+    Optional<String> searchPassword;
+
+    private Cache<String, LdapEntry> entries;
+
+    @PostConstruct
+    void init() {
+        this.entries = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(attributeCacheSeconds))
+            .maximumSize(10000)
+            .build();
+    }
+
+    public User doLogin(String username, String password) throws Exception {
+
+        // an empty password would be an anonymous bind (which succeeds without checking anything)
+        if (username == null || username.isBlank() || password == null || password.isEmpty()) {
+            throw new Exception("Username and password must not be empty");
+        }
+        final String uid = username.trim();
+        final String dn = "uid=" + Rdn.escapeValue(uid) + "," + baseDn;
 
         DirContext authContext = null;
         try {
-            authContext = new InitialDirContext(environment);
+            // the bind checks the password (not pooled, so every login binds again)
+            authContext = new InitialDirContext(this.environment(dn, password, false));
 
-            // create user object
-            User user = new User(
-                authContext.getAttributes(dn).get("mail") + "",
-                authContext.getAttributes(dn).get("cn") + "",
-                authContext.getAttributes(dn).get("uid") + "",
-                ""
-            );
-        
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            controls.setReturningAttributes(new String[] {
-                    // "nsRole", //Role of user
-                    "uid",
-                    // "objectClass",
-                    "givenName", "sn", "cn", "gidNumber", "mail" });
-            NamingEnumeration<?> results = authContext.search(PRINCIPAL, "uid=" + username.trim(),
-                    controls);
-
-            if (results.hasMore()) {
-                SearchResult searchResult = (SearchResult) results.next();
-                Attributes attributes = searchResult.getAttributes();
-                String gidNumber = attributes.get("gidNumber") + "";
-                user.assignProfAndStudentRoleByLdapId(gidNumber);
+            LdapEntry entry = entries.getIfPresent(uid);
+            if (entry == null) {
+                // as the user (like before the pooling) unless a service account is configured
+                entry = searchDn.isPresent() ? this.search(uid) : this.search(authContext, uid);
+                entries.put(uid, entry);
             }
- 
+
+            // create user object
+            User user = new User(entry.mail, entry.cn, entry.uid, "");
+            user.assignProfAndStudentRoleByLdapId(entry.gidNumber);
             return user;
         } catch (AuthenticationException ex) {
             System.out.println(ex.getMessage());
@@ -67,10 +112,52 @@ public class LdapHtwg {
             System.out.println(ex.getMessage());
             throw new Exception(ex.getMessage());
         } finally {
-            if (authContext!=null)
+            if (authContext != null)
                 authContext.close();
         }
 
     }
-    
+
+    private Hashtable<String, String> environment(String principal, String credentials, boolean pooled) {
+        Hashtable<String, String> environment = new Hashtable<String, String>();
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        environment.put(Context.PROVIDER_URL, ldapUrl);
+        environment.put(Context.SECURITY_AUTHENTICATION, "simple");
+        environment.put(Context.SECURITY_PRINCIPAL, principal);
+        environment.put(Context.SECURITY_CREDENTIALS, credentials);
+        environment.put("com.sun.jndi.ldap.connect.pool", String.valueOf(pooled));
+        environment.put("com.sun.jndi.ldap.connect.timeout", timeoutMillis.toString());
+        environment.put("com.sun.jndi.ldap.read.timeout", timeoutMillis.toString());
+        return environment;
+    }
+
+    // all needed attributes of the user with one search (on a pooled connection of the service account)
+    private LdapEntry search(String uid) throws NamingException {
+        DirContext context = new InitialDirContext(this.environment(searchDn.get(), searchPassword.orElse(""), true));
+        try {
+            return this.search(context, uid);
+        } finally {
+            // returns the connection to the pool
+            context.close();
+        }
+    }
+
+    private LdapEntry search(DirContext context, String uid) throws NamingException {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setCountLimit(1);
+        controls.setReturningAttributes(new String[] { "uid", "cn", "gidNumber", "mail" });
+
+        // the filter argument is escaped by JNDI
+        NamingEnumeration<SearchResult> results = context.search(baseDn, "(uid={0})", new Object[] { uid }, controls);
+        try {
+            if (!results.hasMore()) {
+                throw new NamingException("User " + uid + " not found");
+            }
+            return new LdapEntry(results.next().getAttributes());
+        } finally {
+            results.close();
+        }
+    }
+
 }
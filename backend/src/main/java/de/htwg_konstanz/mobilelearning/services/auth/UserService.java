@@ -1,19 +1,33 @@
 package de.htwg_konstanz.mobilelearning.services.auth;
 
+import java.util.List;
+
+import org.bson.types.ObjectId;
 import org.jboss.resteasy.reactive.RestHeader;
 
+import de.htwg_konstanz.mobilelearning.helper.MoodleEnrolmentSync;
 import de.htwg_konstanz.mobilelearning.models.Course;
+import de.htwg_konstanz.mobilelearning.models.MoodleEnrolment;
+import de.htwg_konstanz.mobilelearning.models.auth.RefreshToken;
 import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserPrincipal;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.MoodleEnrolmentRepository;
+import de.htwg_konstanz.mobilelearning.repositories.RefreshTokenRepository;
 import de.htwg_konstanz.mobilelearning.repositories.UserRepository;
 import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 
 // POST: /auth/login ( body: { username: string, password: string } )
     // wenn nicht vorhanden: neuen User anlegen und zurückgeben (mit id)
@@ -22,6 +36,8 @@ import jakarta.ws.rs.core.Response;
 @Path("/user")
 public class UserService {
 
+    public static final String REFRESH_TOKEN_HEADER = "X-Refresh-Token";
+
     @Inject
     UserRepository userRepository;
 
@@ -30,6 +46,18 @@ public class UserService {
 
     @Inject
     JwtService JwtService;
+
+    @Inject
+    LdapHtwg ldapHtwg;
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Inject
+    MoodleEnrolmentSync moodleEnrolmentSync;
+
+    @Inject
+    MoodleEnrolmentRepository moodleEnrolmentRepository;
     
     @POST
     @PermitAll
@@ -51,15 +79,11 @@ public class UserService {
         if (username.equals("Student") || username.equals("Prof") || username.equals("Admin")) {
 
             // check if user exists in db
-            User existingUser = userRepository.findByUsername(username);
+            UserPrincipal existingUser = userRepository.findPrincipalByUsername(username);
             if (existingUser != null) {
                 // return jwt token
-                String json = JwtService.getToken(existingUser);
-                if (json == null) {
-                    return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
-                }
                 System.out.println("User exists: " + existingUser.getId().toHexString());
-                return Response.ok(json).build();
+                return this.tokenResponse(existingUser.toUser());
             }
 
             User newUser = new User(
@@ -88,16 +112,11 @@ public class UserService {
                 }
             }
 
-            String json = JwtService.getToken(newUser);
-            if (json == null) {
-                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
-            }
-            return Response.ok(json).build();
+            return this.tokenResponse(newUser);
         }
 
         try {
             // fetch user from ldap
-            LdapHtwg ldapHtwg = new LdapHtwg();         
             userFromLdap = ldapHtwg.doLogin(username, password);
             System.out.println("User from LDAP: " + userFromLdap);
         } catch (Exception e) {
@@ -112,8 +131,8 @@ public class UserService {
 
         // check if user exists in db
         String usernameFromLdap = userFromLdap.getUsername();
-        User existingUser = userRepository.findByUsername(usernameFromLdap);
-        System.out.println("Existing user: " + existingUser);
+        UserPrincipal existingUser = userRepository.findPrincipalByUsername(usernameFromLdap);
+        System.out.println("Existing user: " + (existingUser != null ? existingUser.getId().toHexString() : null));
         User user = null;
 
         // if not, create new user
@@ -128,14 +147,83 @@ public class UserService {
             userRepository.persist(newUser);
             user = newUser;
         } else {
-            user = existingUser;
+            user = existingUser.toUser();
         }
 
+        // moodle enrolments are fetched in the background
+        moodleEnrolmentSync.onLogin(usernameFromLdap, password);
+
         // return jwt token
+        return this.tokenResponse(user);
+    }
+
+    /*
+     * Renews the JWT with a refresh token (issued on login) without asking the LDAP again.
+     * The refresh token is replaced by a new one on every use, the new one is returned in the same header.
+     */
+    @POST
+    @PermitAll
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/refresh")
+    public Response refresh(@RestHeader(REFRESH_TOKEN_HEADER) String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+
+        String newRefreshToken = RefreshTokenRepository.newToken();
+        RefreshToken redeemed = refreshTokenRepository.redeem(refreshToken, newRefreshToken);
+        if (redeemed == null) {
+            // a replaced token was used again (stolen or replayed), so no token of the user can be trusted
+            ObjectId reusedBy = refreshTokenRepository.revokeAllIfRotated(refreshToken);
+            if (reusedBy != null) {
+                System.out.println("Reuse of a rotated refresh token, revoked all refresh tokens of user " + reusedBy);
+            }
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+
+        // the current roles, name and email of the user (not the ones from the login)
+        UserPrincipal user = userRepository.findPrincipalById(redeemed.getUserId());
+        if (user == null) {
+            refreshTokenRepository.revokeAll(redeemed.getUserId());
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+
+        // still active, the moodle enrolments stay synced until the token of the last login is too old
+        moodleEnrolmentSync.onActivity(user.getUsername());
+
+        String json = JwtService.getToken(user.toUser());
+        if (json == null) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+        return Response.ok(json).header(REFRESH_TOKEN_HEADER, newRefreshToken).build();
+    }
+
+    // logout: the refresh token can not be used anymore
+    @DELETE
+    @PermitAll
+    @Path("/refresh")
+    public Response revokeRefreshToken(@RestHeader(REFRESH_TOKEN_HEADER) String refreshToken) {
+        if (refreshToken != null && !refreshToken.isEmpty()) {
+            refreshTokenRepository.revoke(refreshToken);
+        }
+        return Response.noContent().build();
+    }
+
+    // the signed jwt (body) and a new refresh token (header)
+    private Response tokenResponse(User user) {
         String json = JwtService.getToken(user);
         if (json == null) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
-        return Response.ok(json).build();
+        return Response.ok(json).header(REFRESH_TOKEN_HEADER, refreshTokenRepository.issue(user)).build();
+    }
+
+    // moodle courses of the user (stored by the background sync, no request to moodle)
+    @GET
+    @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/moodle/courses")
+    public List<MoodleEnrolment> getMoodleCourses(@Context SecurityContext ctx) {
+        return moodleEnrolmentRepository.findByUsername(ctx.getUserPrincipal().getName());
     }
 }
\ No newline at end of file
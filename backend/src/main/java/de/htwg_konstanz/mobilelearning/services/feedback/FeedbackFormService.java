@@ -3,24 +3,44 @@ package de.htwg_konstanz.mobilelearning.services.feedback;
 import java.util.List;
 
 import org.bson.types.ObjectId;
+import org.jboss.resteasy.reactive.ResponseHeader;
 import org.jboss.resteasy.reactive.RestPath;
 
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.helper.ConditionalResponse;
+import de.htwg_konstanz.mobilelearning.helper.FormEventStreams;
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache;
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache.View;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveCourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveResultRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
+import de.htwg_konstanz.mobilelearning.services.feedback.socket.LiveFeedbackSocketMessage;
+import io.smallrye.jwt.auth.principal.JWTCallerPrincipal;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
 
 @Path("/course/{courseId}/feedback/form")
 public class FeedbackFormService {
@@ -28,35 +48,80 @@ public class FeedbackFormService {
     @Inject
     private CourseRepository courseRepository;
 
+    @Inject
+    private ResultRepository resultRepository;
+
+    @Inject
+    private FormViewCache formViewCache;
+
+    @Inject
+    private FormEventStreams formEventStreams;
+
+    @Inject
+    private ReactiveCourseRepository reactiveCourseRepository;
+
+    @Inject
+    private ReactiveResultRepository reactiveResultRepository;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public List<FeedbackForm> getFeedbackForms(@RestPath String courseId) {
+    public Uni<List<FeedbackForm>> getFeedbackForms(@RestPath String courseId) {
         ObjectId courseObjectId = new ObjectId(courseId);
-        Course course = courseRepository.findById(courseObjectId);
-        return course.getFeedbackForms();
+        return reactiveCourseRepository.findByIdReadOnly(courseObjectId).map(course -> {
+            if (course == null) {
+                throw new NotFoundException("Course not found");
+            }
+            return course.getFeedbackForms();
+        });
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{formId}")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public FeedbackForm getFeedbackForm(@RestPath String courseId, @RestPath String formId, @QueryParam("results") @DefaultValue("false") Boolean results) {
+    public Uni<Response> getFeedbackForm(@Context Request request, @RestPath String courseId, @RestPath String formId, @QueryParam("results") @DefaultValue("false") Boolean results) {
 
         ObjectId courseObjectId = new ObjectId(courseId);
         ObjectId formObjectId = new ObjectId(formId);
-
-        // fill the questionContent with the linked question
-        Course course = courseRepository.findById(courseObjectId);
-        FeedbackForm feedbackForm = course.getFeedbackFormById(formObjectId);
-
-        if (results) {
-            FeedbackForm feedbackFormWithQuestionContents = feedbackForm.copyWithQuestionContents(course);
-            return feedbackFormWithQuestionContents;
-        }
-
-        FeedbackForm feedbackFormWithQuestionContents = feedbackForm.copyWithoutResultsButWithQuestionContents(course);
-        return feedbackFormWithQuestionContents;
+        View view = results ? View.OWNER : View.PARTICIPANT;
+
+        // the client already has the current view (only the course version and the form revision are loaded)
+        return Uni.combine().all().unis(
+            reactiveCourseRepository.findVersion(courseObjectId),
+            formViewCache.revision(formObjectId, view)
+        ).asTuple().flatMap(versionAndRevision -> {
+            Long version = versionAndRevision.getItem1();
+            Long revision = versionAndRevision.getItem2();
+            if (version == null) {
+                throw new NotFoundException("FeedbackForm not found");
+            }
+            Response notModified = ConditionalResponse.notModified(request, formViewCache.tag(formObjectId, view, version, revision));
+            if (notModified != null) {
+                return Uni.createFrom().item(notModified);
+            }
+
+            // fill the questionContent with the linked question (only the form and its questions are loaded)
+            return reactiveCourseRepository.findCourseWithForm(courseObjectId, formObjectId).flatMap(course -> {
+                if (course == null || course.getFeedbackFormById(formObjectId) == null) {
+                    throw new NotFoundException("FeedbackForm not found");
+                }
+                FeedbackForm feedbackForm = course.getFeedbackFormById(formObjectId);
+
+                // the serialized view is only built again if the course, the results or the participants changed
+                String etag = formViewCache.tag(formObjectId, view, course.getVersion(), revision);
+                return formViewCache.get(formObjectId, view, etag, () -> {
+                    if (results) {
+                        return reactiveResultRepository.findResultsByFormId(formObjectId).map(formResults -> {
+                            FeedbackForm feedbackFormWithQuestionContents = feedbackForm.copyWithQuestionContents(course);
+                            feedbackFormWithQuestionContents.fillResults(formResults);
+                            return feedbackFormWithQuestionContents;
+                        });
+                    }
+                    return Uni.createFrom().item(feedbackForm.copyWithoutResultsButWithQuestionContents(course));
+                }).map(feedbackFormView -> ConditionalResponse.ok(feedbackFormView, etag));
+            });
+        });
     }
 
     @PUT
@@ -124,16 +189,49 @@ public class FeedbackFormService {
     public FeedbackForm clearFeedbackFormResults(@RestPath String courseId, @RestPath String formId) {
         ObjectId courseObjectId = new ObjectId(courseId);
         ObjectId formObjectId = new ObjectId(formId);
-        Course course = courseRepository.findById(courseObjectId);
-        FeedbackForm feedbackForm = course.getFeedbackFormById(formObjectId);
+        FeedbackForm feedbackForm = courseRepository.findFeedbackFormByIds(courseObjectId, formObjectId);
 
         if (feedbackForm == null) {
             throw new NotFoundException("Feedbackcourse not found");
         }
 
+        resultRepository.deleteByFormId(formObjectId);
         feedbackForm.clearResults();
-        courseRepository.update(course);
         return feedbackForm;
     }
 
+    /*
+     * Server-sent events with the owner messages of the live socket (for read-only views like projectors).
+     * Reconnecting clients (Last-Event-ID) get the missed events, new clients start with the latest one.
+     */
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @Path("/{formId}/events")
+    @RolesAllowed({ UserRole.PROF })
+    @ResponseHeader(name = "Cache-Control", value = "no-cache, no-transform")
+    @ResponseHeader(name = "X-Accel-Buffering", value = "no")
+    public Multi<OutboundSseEvent> getFeedbackFormEvents(@Context SecurityContext ctx, @Context Sse sse, @RestPath String courseId, @RestPath String formId, @HeaderParam("Last-Event-ID") String lastEventId) {
+        ObjectId courseObjectId = new ObjectId(courseId);
+        ObjectId formObjectId = new ObjectId(formId);
+        String userId = ((JWTCallerPrincipal) ctx.getUserPrincipal()).getSubject();
+
+        return reactiveCourseRepository.findCourseWithForm(courseObjectId, formObjectId).flatMap(course -> {
+            if (course == null || course.getFeedbackFormById(formObjectId) == null) {
+                throw new NotFoundException("FeedbackForm not found");
+            }
+
+            // only owners see the results
+            if (!course.isOwner(userId)) {
+                throw new ForbiddenException("Only owners of the course can follow the events");
+            }
+
+            // the current view (like an owner message of the socket) for viewers whose missed events are not buffered
+            return reactiveResultRepository.findResultsByFormId(formObjectId).map(formResults -> {
+                FeedbackForm ownerForm = course.getFeedbackFormById(formObjectId).copyWithQuestionContents(course);
+                ownerForm.fillResults(formResults);
+                return new LiveFeedbackSocketMessage(FormEventStreams.FORM_VIEW, ownerForm.status.toString(), null, null, null, ownerForm).toJson();
+            });
+        }).onItem().transformToMulti(currentView -> formEventStreams.subscribe(sse, formObjectId, lastEventId, currentView));
+    }
+
 }
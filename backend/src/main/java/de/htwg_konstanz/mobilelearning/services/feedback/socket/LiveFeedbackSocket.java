@@ -1,5 +1,6 @@
 package de.htwg_konstanz.mobilelearning.services.feedback.socket;
 
+import java.util.ConcurrentModificationException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -8,16 +9,18 @@ import de.htwg_konstanz.mobilelearning.services.auth.JwtService;
 import org.bson.types.ObjectId;
 
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.helper.FormEventStreams;
 import de.htwg_konstanz.mobilelearning.helper.Hasher;
 import de.htwg_konstanz.mobilelearning.helper.SocketConnection;
 import de.htwg_konstanz.mobilelearning.helper.SocketConnectionType;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
 import de.htwg_konstanz.mobilelearning.models.Result;
-import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserPrincipal;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.models.feedback.FeedbackForm;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
 import de.htwg_konstanz.mobilelearning.repositories.UserRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -40,16 +43,22 @@ public class LiveFeedbackSocket {
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private ResultRepository resultRepository;
+
     @Inject
     JwtService jwtService;
 
+    @Inject
+    FormEventStreams formEventStreams;
+
     @OnOpen
     public void onOpen(Session session, @PathParam("courseId") String courseId, @PathParam("formId") String formId, @PathParam("userId") String userId, @PathParam("jwt") String jwt) throws Exception {
         // userId from Jwt has to match userId from path
         if (jwtService.getJwtClaims(jwt).getSubject().equals(userId)){
 
             // check if course, form and user exist
-            Course course = courseRepository.findById(new ObjectId(courseId));
+            Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
             if (course == null) {
                 System.out.println("Course not found");
                 return;
@@ -59,7 +68,7 @@ public class LiveFeedbackSocket {
                 System.out.println("Form not found");
                 return;
             }
-            User user = userRepository.findById(new ObjectId(userId));
+            UserPrincipal user = userRepository.findPrincipalById(new ObjectId(userId));
             if (user == null) {
                 System.out.println("User not found");
                 return;
@@ -96,10 +105,31 @@ public class LiveFeedbackSocket {
     @OnMessage
     public void onMessage(String message, @PathParam("courseId") String courseId, @PathParam("formId") String formId, @PathParam("userId") String userId) {
         LiveFeedbackSocketMessage feedbackSocketMessage = new LiveFeedbackSocketMessage(message);
-        this.evaluateMessage(feedbackSocketMessage, courseId, formId, userId);
+        try {
+            this.evaluateMessage(feedbackSocketMessage, courseId, formId, userId);
+        } catch (ConcurrentModificationException e) {
+            // the course was changed by another request at the same time, the client can send the message again
+            System.out.println("Message not applied: " + e.getMessage());
+        }
     }
 
     private void broadcast(LiveFeedbackSocketMessage message, String courseId, String formId) {
+
+        // prepare the form once for participants (without results) and once for owners (with results)
+        Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
+        FeedbackForm participantForm = message.form.copyWithoutResultsButWithQuestionContents(course);
+        FeedbackForm ownerForm = message.form.copyWithQuestionContents(course);
+        ownerForm.fillResults(resultRepository.findResultsByFormId(ownerForm.getId()));
+
+        // render the message once for each view
+        message.form = participantForm;
+        String participantMessage = message.toJson();
+        message.form = ownerForm;
+        String ownerMessage = message.toJson();
+
+        // read-only viewers (server-sent events) get the owner messages
+        formEventStreams.publish(new ObjectId(formId), message.action, ownerMessage);
+
         connections.values().forEach(connection -> {
 
             // check if the course ID and form ID match
@@ -115,16 +145,10 @@ public class LiveFeedbackSocket {
             if (message.action.equals("RESULT_ADDED") && connection.getType().equals(SocketConnectionType.PARTICIPANT)) {
                 return;
             }
-            if (connection.getType().equals(SocketConnectionType.PARTICIPANT)) {
-                // not show the results
-                message.form = message.form.copyWithoutResultsButWithQuestionContents(courseRepository.findById(new ObjectId(courseId)));
-            } else {
-                // show the results
-                message.form = message.form.copyWithQuestionContents(courseRepository.findById(new ObjectId(courseId)));
-            }
+            // participants do not see the results
+            String messageString = connection.getType().equals(SocketConnectionType.PARTICIPANT) ? participantMessage : ownerMessage;
 
             // send the message
-            String messageString = message.toJson();
             connection.session.getAsyncRemote().sendObject(messageString, result ->  {
                 if (result.getException() != null) {
                     System.out.println("Unable to send message: " + result.getException());
@@ -196,6 +220,7 @@ public class LiveFeedbackSocket {
 
         // if it is set to NOT_STARTED, remove all results
         if (formStatusEnum == FormStatus.NOT_STARTED) {
+            resultRepository.deleteByFormId(form.getId());
             form.clearResults();
             // send the event to all receivers
             LiveFeedbackSocketMessage outgoingMessage = new LiveFeedbackSocketMessage("RESULT_ADDED", form.status.toString(), null, null, null, form);
@@ -229,8 +254,8 @@ public class LiveFeedbackSocket {
             return false;
         }
 
-        // get the form
-        Course course = courseRepository.findById(new ObjectId(courseId));
+        // get the form (the course is only read, results are stored in their own collection)
+        Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
         if (course == null) {
             System.out.println("Course not found");
             return false;
@@ -251,15 +276,12 @@ public class LiveFeedbackSocket {
         // add the result
         String hashedUserId = Hasher.hash(userId);
         Result result = new Result(hashedUserId, feedbackSocketMessage.resultValues);
-        Boolean wasResultAdded = element.addResult(result);
+        Boolean wasResultAdded = resultRepository.addResult(course.getId(), form.getId(), element.getId(), result);
         if (!wasResultAdded) {
             System.out.println("Result was not added (user probably already submitted a result)");
             return false;
         }
 
-        // update the form in the database
-        courseRepository.update(course);
-
         // send the updated form to all receivers (stringify the form)
         LiveFeedbackSocketMessage outgoingMessage = new LiveFeedbackSocketMessage("RESULT_ADDED", null, feedbackSocketMessage.resultElementId, feedbackSocketMessage.resultValues, feedbackSocketMessage.roles, form);
         this.broadcast(outgoingMessage, courseId, formId);
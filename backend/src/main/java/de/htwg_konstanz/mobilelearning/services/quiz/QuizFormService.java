@@ -4,10 +4,20 @@ import java.util.List;
 import org.bson.types.ObjectId;
 import org.jboss.resteasy.reactive.RestPath;
 
+import de.htwg_konstanz.mobilelearning.helper.AliasAllocator;
+import de.htwg_konstanz.mobilelearning.helper.ConditionalResponse;
+import de.htwg_konstanz.mobilelearning.helper.FormEventStreams;
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache;
+import de.htwg_konstanz.mobilelearning.helper.FormViewCache.View;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ParticipantRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveCourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveParticipantRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ReactiveResultRepository;
+import de.htwg_konstanz.mobilelearning.services.quiz.socket.LiveQuizSocketMessage;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.DefaultValue;
@@ -19,9 +29,17 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.SecurityContext;
 import io.smallrye.jwt.auth.principal.JWTCallerPrincipal;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import org.jboss.resteasy.reactive.ResponseHeader;
 
 import org.jboss.resteasy.reactive.RestResponse;
 import org.jboss.resteasy.reactive.RestResponse.ResponseBuilder;
@@ -30,40 +48,83 @@ import org.jboss.resteasy.reactive.RestResponse.ResponseBuilder;
 public class QuizFormService {
     
     @Inject CourseRepository courseRepository;
+    @Inject ParticipantRepository participantRepository;
+    @Inject AliasAllocator aliasAllocator;
+    @Inject FormViewCache formViewCache;
+    @Inject FormEventStreams formEventStreams;
+    @Inject ReactiveCourseRepository reactiveCourseRepository;
+    @Inject ReactiveResultRepository reactiveResultRepository;
+    @Inject ReactiveParticipantRepository reactiveParticipantRepository;
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public List<QuizForm> getQuizForms(@RestPath String courseId) {
+    public Uni<List<QuizForm>> getQuizForms(@RestPath String courseId) {
         ObjectId courseObjectId = new ObjectId(courseId);
-        Course course = courseRepository.findById(courseObjectId);
-        return course.getQuizForms();
+        return reactiveCourseRepository.findByIdReadOnly(courseObjectId).map(course -> {
+            if (course == null) {
+                throw new NotFoundException("Course not found");
+            }
+            return course.getQuizForms();
+        });
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{formId}")
     @RolesAllowed({ UserRole.PROF, UserRole.STUDENT })
-    public QuizForm getQuizForm(@RestPath String courseId, @RestPath String formId, @QueryParam("results") @DefaultValue("false") Boolean results) {
+    public Uni<Response> getQuizForm(@Context Request request, @RestPath String courseId, @RestPath String formId, @QueryParam("results") @DefaultValue("false") Boolean results) {
 
         ObjectId courseObjectId = new ObjectId(courseId);
         ObjectId formObjectId = new ObjectId(formId);
+        View view = results ? View.OWNER : View.PARTICIPANT;
 
-        // fill the questionContent with the linked question
-        Course course = courseRepository.findById(courseObjectId);
-        QuizForm quizForm = course.getQuizFormById(formObjectId);
-        if (results) {
-            QuizForm quizFormWithQuestionContents = quizForm.copyWithQuestionContents(course);
-            return quizFormWithQuestionContents;
-        }
-        
-        QuizForm quizFormWithQuestionContents = quizForm.copyWithoutResultsButWithQuestionContents(course);
-        return quizFormWithQuestionContents;
+        // the client already has the current view (only the course version and the form revision are loaded)
+        return Uni.combine().all().unis(
+            reactiveCourseRepository.findVersion(courseObjectId),
+            formViewCache.revision(formObjectId, view)
+        ).asTuple().flatMap(versionAndRevision -> {
+            Long version = versionAndRevision.getItem1();
+            Long revision = versionAndRevision.getItem2();
+            if (version == null) {
+                throw new NotFoundException("QuizForm not found");
+            }
+            Response notModified = ConditionalResponse.notModified(request, formViewCache.tag(formObjectId, view, version, revision));
+            if (notModified != null) {
+                return Uni.createFrom().item(notModified);
+            }
+
+            // fill the questionContent with the linked question (only the form and its questions are loaded)
+            return reactiveCourseRepository.findCourseWithForm(courseObjectId, formObjectId).flatMap(course -> {
+                if (course == null || course.getQuizFormById(formObjectId) == null) {
+                    throw new NotFoundException("QuizForm not found");
+                }
+                QuizForm quizForm = course.getQuizFormById(formObjectId);
+
+                // the serialized view is only built again if the course, the results or the participants changed
+                String etag = formViewCache.tag(formObjectId, view, course.getVersion(), revision);
+                return formViewCache.get(formObjectId, view, etag, () -> {
+                    if (results) {
+                        return Uni.combine().all().unis(
+                            reactiveResultRepository.findResultsByFormId(formObjectId),
+                            reactiveParticipantRepository.findByFormId(formObjectId)
+                        ).asTuple().map(resultsAndParticipants -> {
+                            QuizForm quizFormWithQuestionContents = quizForm.copyWithQuestionContents(course);
+                            quizFormWithQuestionContents.fillResults(resultsAndParticipants.getItem1());
+                            quizFormWithQuestionContents.fillParticipants(resultsAndParticipants.getItem2());
+                            return quizFormWithQuestionContents;
+                        });
+                    }
+                    return Uni.createFrom().item(quizForm.copyWithoutResultsButWithQuestionContents(course));
+                }).map(quizFormView -> ConditionalResponse.ok(quizFormView, etag));
+            });
+        });
     }
 
     /*
      * Endpoint to participate in a quiz
      * The user has to be registered with the user id and he has to provide an alias (String)
+     * Without an alias, the next free alias of the form is assigned and returned
      */
     @POST
     @Produces(MediaType.APPLICATION_JSON)
@@ -74,22 +135,66 @@ public class QuizFormService {
         // get the user
         String userId = ((JWTCallerPrincipal) ctx.getUserPrincipal()).getSubject();
 
-        // get the course and the quizForm
+        // check if the course and the quizForm exist
         ObjectId courseObjectId = new ObjectId(courseId);
         ObjectId formObjectId = new ObjectId(formId);
-        Course course = courseRepository.findById(courseObjectId);
-        if (course == null) { throw new NotFoundException("Course not found"); }
-        QuizForm quizForm = course.getQuizFormById(formObjectId);
-        if (quizForm == null) { throw new NotFoundException("QuizForm not found"); }
+        if (!courseRepository.existsQuizForm(courseObjectId, formObjectId)) { throw new NotFoundException("QuizForm not found"); }
 
-        // add the participant and check if the alias is already taken
-        Boolean successfullyAdded = quizForm.addParticipant(new ObjectId(userId), alias);
+        // add the participant (the unique alias index reports if the alias is already taken)
+        if (alias == null || alias.isBlank()) {
+            // allocated aliases are unique, a conflict is only possible with an alias chosen by hand
+            for (int attempt = 0; attempt < 3; attempt++) {
+                String allocatedAlias = aliasAllocator.next(formObjectId);
+                if (participantRepository.join(courseObjectId, formObjectId, new ObjectId(userId), allocatedAlias)) {
+                    return RestResponse.ok(allocatedAlias);
+                }
+            }
+            return RestResponse.status(Response.Status.CONFLICT, "Alias already taken");
+        }
+        Boolean successfullyAdded = participantRepository.join(courseObjectId, formObjectId, new ObjectId(userId), alias);
         if (!successfullyAdded) {
             return RestResponse.status(Response.Status.CONFLICT, "Alias already taken");
         }
-        courseRepository.update(course);
 
         return RestResponse.ok("Successfully added");
     }
 
+    /*
+     * Server-sent events with the owner messages of the live socket (for read-only views like projectors).
+     * Reconnecting clients (Last-Event-ID) get the missed events, new clients start with the latest one.
+     */
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @Path("/{formId}/events")
+    @RolesAllowed({ UserRole.PROF })
+    @ResponseHeader(name = "Cache-Control", value = "no-cache, no-transform")
+    @ResponseHeader(name = "X-Accel-Buffering", value = "no")
+    public Multi<OutboundSseEvent> getQuizFormEvents(@Context SecurityContext ctx, @Context Sse sse, @RestPath String courseId, @RestPath String formId, @HeaderParam("Last-Event-ID") String lastEventId) {
+        ObjectId courseObjectId = new ObjectId(courseId);
+        ObjectId formObjectId = new ObjectId(formId);
+        String userId = ((JWTCallerPrincipal) ctx.getUserPrincipal()).getSubject();
+
+        return reactiveCourseRepository.findCourseWithForm(courseObjectId, formObjectId).flatMap(course -> {
+            if (course == null || course.getQuizFormById(formObjectId) == null) {
+                throw new NotFoundException("QuizForm not found");
+            }
+
+            // only owners see the results
+            if (!course.isOwner(userId)) {
+                throw new ForbiddenException("Only owners of the course can follow the events");
+            }
+
+            // the current view (like an owner message of the socket) for viewers whose missed events are not buffered
+            return Uni.combine().all().unis(
+                reactiveResultRepository.findResultsByFormId(formObjectId),
+                reactiveParticipantRepository.findByFormId(formObjectId)
+            ).asTuple().map(resultsAndParticipants -> {
+                QuizForm ownerForm = course.getQuizFormById(formObjectId).copyWithQuestionContents(course);
+                ownerForm.fillResults(resultsAndParticipants.getItem1());
+                ownerForm.fillParticipants(resultsAndParticipants.getItem2());
+                return new LiveQuizSocketMessage(FormEventStreams.FORM_VIEW, ownerForm.status.toString(), null, null, null, ownerForm).toJson();
+            });
+        }).onItem().transformToMulti(currentView -> formEventStreams.subscribe(sse, formObjectId, lastEventId, currentView));
+    }
+
 }
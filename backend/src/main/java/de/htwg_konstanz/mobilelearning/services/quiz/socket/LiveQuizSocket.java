@@ -1,5 +1,6 @@
 package de.htwg_konstanz.mobilelearning.services.quiz.socket;
 
+import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -9,17 +10,20 @@ import de.htwg_konstanz.mobilelearning.services.auth.JwtService;
 import org.bson.types.ObjectId;
 
 import de.htwg_konstanz.mobilelearning.enums.FormStatus;
+import de.htwg_konstanz.mobilelearning.helper.FormEventStreams;
 import de.htwg_konstanz.mobilelearning.helper.Hasher;
 import de.htwg_konstanz.mobilelearning.helper.SocketConnection;
 import de.htwg_konstanz.mobilelearning.helper.SocketConnectionType;
 import de.htwg_konstanz.mobilelearning.models.Course;
 import de.htwg_konstanz.mobilelearning.models.QuestionWrapper;
 import de.htwg_konstanz.mobilelearning.models.Result;
-import de.htwg_konstanz.mobilelearning.models.auth.User;
+import de.htwg_konstanz.mobilelearning.models.auth.UserPrincipal;
 import de.htwg_konstanz.mobilelearning.models.auth.UserRole;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizForm;
 import de.htwg_konstanz.mobilelearning.models.quiz.QuizQuestion;
 import de.htwg_konstanz.mobilelearning.repositories.CourseRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ParticipantRepository;
+import de.htwg_konstanz.mobilelearning.repositories.ResultRepository;
 import de.htwg_konstanz.mobilelearning.repositories.UserRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -42,9 +46,18 @@ public class LiveQuizSocket {
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private ResultRepository resultRepository;
+
+    @Inject
+    private ParticipantRepository participantRepository;
+
     @Inject
     JwtService jwtService;
 
+    @Inject
+    FormEventStreams formEventStreams;
+
     @OnOpen
     public void onOpen(
         Session session,
@@ -57,7 +70,7 @@ public class LiveQuizSocket {
         if (jwtService.getJwtClaims(jwt).getSubject().equals(userId)){
 
             // check if course, form and user exist
-            Course course = courseRepository.findById(new ObjectId(courseId));
+            Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
             if (course == null) {
                 System.out.println("Course not found");
                 return;
@@ -67,14 +80,14 @@ public class LiveQuizSocket {
                 System.out.println("Form not found");
                 return;
             }
-            User user = userRepository.findById(new ObjectId(userId));
+            UserPrincipal user = userRepository.findPrincipalById(new ObjectId(userId));
             if (user == null) {
                 System.out.println("User not found");
                 return;
             }
 
             // check if the user is owner or a participant of the course (is registered)
-            Boolean isParticipant = form.isParticipant(userId);
+            Boolean isParticipant = participantRepository.isParticipant(form.getId(), new ObjectId(userId));
             Boolean isOwner = course.isOwner(userId);
             if (!isParticipant && !isOwner) {
                 System.out.println("User is not a participant of the course. Please register first.");
@@ -111,10 +124,32 @@ public class LiveQuizSocket {
     @OnMessage
     public void onMessage(String message, @PathParam("courseId") String courseId, @PathParam("formId") String formId, @PathParam("userId") String userId) {
         LiveQuizSocketMessage quizSocketMessage = new LiveQuizSocketMessage(message);
-        this.evaluateMessage(quizSocketMessage, courseId, formId, userId);
+        try {
+            this.evaluateMessage(quizSocketMessage, courseId, formId, userId);
+        } catch (ConcurrentModificationException e) {
+            // the course was changed by another request at the same time, the client can send the message again
+            System.out.println("Message not applied: " + e.getMessage());
+        }
     }
 
     private void broadcast(LiveQuizSocketMessage message, String courseId, String formId) {
+
+        // prepare the form once for participants (without results) and once for owners (with results)
+        Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
+        QuizForm participantForm = message.form.copyWithoutResultsAndParticipantsButWithQuestionContents(course);
+        QuizForm ownerForm = message.form.copyWithQuestionContents(course);
+        ownerForm.fillResults(resultRepository.findResultsByFormId(ownerForm.getId()));
+        ownerForm.fillParticipants(participantRepository.findByFormId(ownerForm.getId()));
+
+        // render the message once for each view
+        message.form = participantForm;
+        String participantMessage = message.toJson();
+        message.form = ownerForm;
+        String ownerMessage = message.toJson();
+
+        // read-only viewers (server-sent events) get the owner messages
+        formEventStreams.publish(new ObjectId(formId), message.action, ownerMessage);
+
         connections.values().forEach(connection -> {
 
             // check if the course ID and form ID match
@@ -130,16 +165,10 @@ public class LiveQuizSocket {
             if (message.action.equals("RESULT_ADDED") && connection.getType().equals(SocketConnectionType.PARTICIPANT)) {
                 return;
             }
-            if (connection.getType().equals(SocketConnectionType.PARTICIPANT)) {
-                // not show the results
-                message.form = message.form.copyWithoutResultsAndParticipantsButWithQuestionContents(courseRepository.findById(new ObjectId(courseId)));
-            } else {
-                // show the results
-                message.form = message.form.copyWithQuestionContents(courseRepository.findById(new ObjectId(courseId)));
-            }
+            // participants do not see the results
+            String messageString = connection.getType().equals(SocketConnectionType.PARTICIPANT) ? participantMessage : ownerMessage;
 
             // send the message
-            String messageString = message.toJson();
             connection.session.getAsyncRemote().sendObject(messageString, result ->  {
                 if (result.getException() != null) {
                     System.out.println("Unable to send message: " + result.getException());
@@ -215,6 +244,8 @@ public class LiveQuizSocket {
 
         // if it is set to NOT_STARTED, remove all results
         if (formStatusEnum == FormStatus.NOT_STARTED) {
+            resultRepository.deleteByFormId(form.getId());
+            participantRepository.deleteByFormId(form.getId());
             form.clearResults();
             form.clearParticipants();
             form.currentQuestionIndex = 0;
@@ -251,8 +282,8 @@ public class LiveQuizSocket {
             return false;
         }
 
-        // get the form
-        Course course = courseRepository.findById(new ObjectId(courseId));
+        // get the form (the course is only read, results are stored in their own collection)
+        Course course = courseRepository.findCourseWithForm(new ObjectId(courseId), new ObjectId(formId));
         if (course == null) {
             System.out.println("Course not found");
             return false;
@@ -274,7 +305,7 @@ public class LiveQuizSocket {
         // add the result
         String hashedUserId = Hasher.hash(userId);
         Result result = new Result(hashedUserId, quizSocketMessage.resultValues);
-        Boolean wasResultAdded = questionwrapper.addResult(result);
+        Boolean wasResultAdded = resultRepository.addResult(course.getId(), form.getId(), questionwrapper.getId(), result);
         if (!wasResultAdded) {
             System.out.println("Result was not added (user probably already submitted a result)");
             return false;
@@ -288,12 +319,9 @@ public class LiveQuizSocket {
         }
         if (question.getHasCorrectAnswers()) {
             Integer gainedPoints = question.checkAnswer(quizSocketMessage.resultValues);
-            form.increaseScoreOfParticipant(new ObjectId(userId), gainedPoints);
+            participantRepository.increaseScore(form.getId(), new ObjectId(userId), gainedPoints);
         }
 
-        // update the form in the database
-        courseRepository.update(course);
-
         // send the updated form to all receivers (stringify the form)
         LiveQuizSocketMessage outgoingMessage = new LiveQuizSocketMessage("RESULT_ADDED", null, quizSocketMessage.resultElementId, quizSocketMessage.resultValues, quizSocketMessage.roles, form);
         this.broadcast(outgoingMessage, courseId, formId);
@@ -332,6 +360,12 @@ public class LiveQuizSocket {
         List<String> events = form.next();
         courseRepository.update(course);
 
+        // a finished quiz is reset to NOT_STARTED (remove the results and participants as well)
+        if (form.status == FormStatus.NOT_STARTED) {
+            resultRepository.deleteByFormId(form.getId());
+            participantRepository.deleteByFormId(form.getId());
+        }
+
         // for all events, send a message
         events.forEach(event -> {
             LiveQuizSocketMessage outgoingMessage = new LiveQuizSocketMessage(event, form.status.toString(), null, null, null, form);
@@ -0,0 +1,93 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class ParticipantRepositoryMigrationTest {
+
+    @Inject
+    ParticipantRepository participantRepository;
+
+    @Inject
+    CourseRepository courseRepository;
+
+    private final ObjectId courseId = new ObjectId();
+    private final ObjectId formId = new ObjectId();
+    private final List<ObjectId> userIds = List.of(new ObjectId(), new ObjectId(), new ObjectId());
+
+    @AfterEach
+    public void cleanUp() {
+        courses().deleteOne(Filters.eq("_id", courseId));
+        participantRepository.delete("formId", formId);
+    }
+
+    @Test
+    public void migrationCanRunTwice() {
+        courses().insertOne(this.courseWithEmbeddedParticipants());
+
+        participantRepository.migrateEmbeddedParticipants();
+        participantRepository.migrateEmbeddedParticipants();
+
+        assertEquals(3, participantRepository.count("formId", formId));
+        assertEquals(0, courses().countDocuments(Filters.and(Filters.eq("_id", courseId), Filters.exists("quizForms.participants.0"))));
+    }
+
+    @Test
+    public void migrationAfterACrashKeepsNewScores() {
+        // a crash after the participants were written but before the course was updated
+        Document course = this.courseWithEmbeddedParticipants();
+        courses().insertOne(course);
+        participantRepository.migrateEmbeddedParticipants();
+        courses().replaceOne(Filters.eq("_id", courseId), course);
+        participantRepository.increaseScore(formId, userIds.get(0), 5);
+
+        participantRepository.migrateEmbeddedParticipants();
+
+        assertEquals(3, participantRepository.count("formId", formId));
+        assertEquals(6, participantRepository.find("formId = ?1 and userId = ?2", formId, userIds.get(0)).firstResult().getScore());
+    }
+
+    @Test
+    public void joinReportsTakenAlias() {
+        participantRepository.join(courseId, formId, userIds.get(0), "Clever Fox");
+
+        assertEquals(false, participantRepository.join(courseId, formId, userIds.get(1), "Clever Fox"));
+        assertEquals(true, participantRepository.join(courseId, formId, userIds.get(0), "Brave Owl"));
+    }
+
+    private MongoCollection<Document> courses() {
+        return courseRepository.mongoCollection().withDocumentClass(Document.class);
+    }
+
+    private Document courseWithEmbeddedParticipants() {
+        List<Document> participants = new ArrayList<Document>();
+        for (int i = 0; i < userIds.size(); i++) {
+            participants.add(new Document("_id", new ObjectId())
+                .append("userId", userIds.get(i))
+                .append("userAlias", "Alias " + i)
+                .append("score", 1));
+        }
+        Document quizForm = new Document("_id", formId)
+            .append("name", "Migration test")
+            .append("questions", List.of())
+            .append("participants", participants);
+        return new Document("_id", courseId)
+            .append("name", "Migration test " + courseId.toHexString())
+            .append("feedbackForms", List.of())
+            .append("quizForms", List.of(quizForm));
+    }
+}
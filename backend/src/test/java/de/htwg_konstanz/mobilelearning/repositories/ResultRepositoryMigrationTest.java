@@ -0,0 +1,111 @@
+package de.htwg_konstanz.mobilelearning.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+
+import de.htwg_konstanz.mobilelearning.models.Result;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class ResultRepositoryMigrationTest {
+
+    @Inject
+    ResultRepository resultRepository;
+
+    @Inject
+    CourseRepository courseRepository;
+
+    private final ObjectId courseId = new ObjectId();
+    private final ObjectId formId = new ObjectId();
+    private final ObjectId questionWrapperId = new ObjectId();
+
+    @AfterEach
+    public void cleanUp() {
+        courses().deleteOne(Filters.eq("_id", courseId));
+        resultRepository.deleteByCourseId(courseId);
+    }
+
+    @Test
+    public void migrationCanRunTwice() {
+        courses().insertOne(this.courseWithEmbeddedResults(250));
+
+        resultRepository.migrateEmbeddedResults();
+        resultRepository.migrateEmbeddedResults();
+
+        assertEquals(3, resultRepository.count("questionWrapperId", questionWrapperId));
+        assertEquals(250, resultRepository.findResults(formId, questionWrapperId).size());
+        assertFalse(courses().find(Filters.eq("_id", courseId)).first().toJson().contains("\"results\""));
+        assertEquals(250, resultRepository.submissionCollection().countDocuments(Filters.eq("formId", formId)));
+    }
+
+    @Test
+    public void migrationCanBeRepeatedAfterACrash() {
+        // a crash after the buckets were written but before the course was updated
+        Document course = this.courseWithEmbeddedResults(250);
+        courses().insertOne(course);
+        resultRepository.migrateEmbeddedResults();
+        courses().replaceOne(Filters.eq("_id", courseId), course);
+
+        resultRepository.migrateEmbeddedResults();
+
+        assertEquals(3, resultRepository.count("questionWrapperId", questionWrapperId));
+        assertEquals(250, resultRepository.findResults(formId, questionWrapperId).size());
+    }
+
+    @Test
+    public void submissionsOfStoredResultsAreBackfilled() {
+        // a bucket stored before the submissions were recorded
+        List<Document> results = List.of(
+            new Document("_id", new ObjectId()).append("hashedUserId", "user-0").append("values", List.of("1")),
+            new Document("_id", new ObjectId()).append("hashedUserId", "user-1").append("values", List.of("2"))
+        );
+        resultRepository.mongoCollection().withDocumentClass(Document.class).insertOne(new Document("courseId", courseId)
+            .append("formId", formId)
+            .append("questionWrapperId", questionWrapperId)
+            .append("count", results.size())
+            .append("results", results));
+
+        resultRepository.backfillSubmissions();
+
+        assertEquals(2, resultRepository.submissionCollection().countDocuments(Filters.eq("formId", formId)));
+        Result again = new Result("user-0", List.of("3"));
+        assertFalse(resultRepository.addResult(courseId, formId, questionWrapperId, again));
+        assertEquals(2, resultRepository.findResults(formId, questionWrapperId).size());
+    }
+
+    private MongoCollection<Document> courses() {
+        return courseRepository.mongoCollection().withDocumentClass(Document.class);
+    }
+
+    private Document courseWithEmbeddedResults(int count) {
+        List<Document> results = new ArrayList<Document>();
+        for (int i = 0; i < count; i++) {
+            results.add(new Document("_id", new ObjectId())
+                .append("hashedUserId", "user-" + i)
+                .append("values", List.of(String.valueOf(i % 5 + 1))));
+        }
+        Document question = new Document("_id", questionWrapperId)
+            .append("questionId", new ObjectId())
+            .append("results", results);
+        Document form = new Document("_id", formId)
+            .append("name", "Migration test")
+            .append("questions", List.of(question));
+        return new Document("_id", courseId)
+            .append("name", "Migration test " + courseId.toHexString())
+            .append("feedbackForms", List.of(form))
+            .append("quizForms", List.of());
+    }
+}
@@ -1,13 +1,16 @@
 import 'package:flutter/material.dart';
 import 'package:http/http.dart' as http;
+import 'package:frontend/global.dart';
 import 'package:frontend/utils.dart';
 
 typedef AliasSubmittedCallback = void Function(String alias);
 
 class ChooseAlias extends StatefulWidget {
+  final String courseId;
+  final String formId;
   final AliasSubmittedCallback onAliasSubmitted;
 
-  const ChooseAlias({Key? key, required this.onAliasSubmitted}) : super(key: key);
+  const ChooseAlias({Key? key, required this.courseId, required this.formId, required this.onAliasSubmitted}) : super(key: key);
 
   @override
   _ChooseAliasState createState() => _ChooseAliasState();
@@ -24,7 +27,12 @@ class _ChooseAliasState extends State<ChooseAlias> {
 
   Future<void> _getRandomAlias() async {
     try {
-      final response = await http.get(Uri.parse('${getBackendUrl()}/funnyalias/'));
+      final response = await http.get(
+        Uri.parse('${getBackendUrl()}/funnyalias/?courseId=${widget.courseId}&formId=${widget.formId}'),
+        headers: {
+          "AUTHORIZATION": "Bearer ${getSession()!.jwt}",
+        },
+      );
       if (response.statusCode == 200) {
         setState(() {
           _aliasController.text = response.body;
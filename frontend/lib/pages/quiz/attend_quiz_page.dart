@@ -185,6 +185,8 @@ class _AttendQuizPageState extends State<AttendQuizPage> {
       return Scaffold(
         appBar: appbar,
         body: ChooseAlias(
+          courseId: _courseId,
+          formId: _formId,
           onAliasSubmitted: (chosenAlias) async {
             setState(() {
               _alias = chosenAlias;